@@ -0,0 +1,375 @@
+package ca.ubc.cs317.dict.batch;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryPipeline;
+import ca.ubc.cs317.dict.net.LatencyHistogram;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks up a stream of words on a DICT server without any user interface, for jobs like enriching a word list of
+ * millions of entries. Words are read in batches and spread over a number of worker threads, each with its own
+ * connection on which it pipelines a whole batch (see DictionaryPipeline). Results are written to a LookupOutput as
+ * each reply is read, so memory use doesn't depend on the size of the input.
+ * <p>
+ * A word whose reply is negative (e.g., an invalid database) is written as an error. A worker whose connection breaks
+ * reconnects and sends the failed words of its batch once more; words that fail again are written as errors, and the
+ * job goes on.
+ * <p>
+ * Run with: java ca.ubc.cs317.dict.batch.BatchLookup [options] host[:port] [wordfile]
+ */
+public class BatchLookup {
+
+    private static final int DEFAULT_PORT = 2628;
+
+    // Tells a worker that there are no more batches
+    private static final List<String> END = Collections.emptyList();
+
+    /**
+     * The outcome of a batch run.
+     */
+    public static class Summary {
+        private final long words;
+        private final long results;
+        private final long errors;
+        private final long nanos;
+        private final LatencyHistogram latency;
+
+        private Summary(long words, long results, long errors, long nanos, LatencyHistogram latency) {
+            this.words = words;
+            this.results = results;
+            this.errors = errors;
+            this.nanos = nanos;
+            this.latency = latency;
+        }
+
+        public long getWordCount() {
+            return words;
+        }
+
+        /**
+         * Returns the number of definitions or matches written.
+         */
+        public long getResultCount() {
+            return results;
+        }
+
+        public long getErrorCount() {
+            return errors;
+        }
+
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        /**
+         * Returns the time from sending each word's command to reading its reply, in nanoseconds.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d words, %d results, %d errors in %.1f s (%.0f words/s); " +
+                            "latency p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    words, results, errors, getSeconds(), words / Math.max(getSeconds(), 1e-9),
+                    latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(90) / 1e6,
+                    latency.getValueAtPercentile(99) / 1e6, latency.getMax() / 1e6);
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private int connections = 4;
+    private int batchSize = 100;
+    private Database database = new Database("*", "All databases");
+    private MatchingStrategy strategy;
+
+    private LookupOutput output;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong words = new AtomicLong();
+    private final AtomicLong results = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile IOException outputFailure;
+
+    public BatchLookup(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Sets the number of connections (and worker threads) used in parallel.
+     */
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * Sets the number of commands each worker pipelines before waiting for their replies.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the database used for lookups; all databases ("*") by default.
+     */
+    public void setDatabase(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Makes the job look up matches with a strategy instead of definitions, or definitions again if strategy is null.
+     */
+    public void setStrategy(MatchingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Looks up every word read from a reader, one word per line (blank lines are skipped), writing the results to an
+     * output. The output is flushed, not closed, when done. Runs can't overlap.
+     *
+     * @return A summary of the run.
+     * @throws DictConnectionException If no connection to the server could be established.
+     * @throws IOException             If the words can't be read or the results can't be written.
+     */
+    public synchronized Summary run(BufferedReader input, LookupOutput output) throws DictConnectionException,
+            IOException {
+        this.output = output;
+        latency.reset();
+        words.set(0);
+        results.set(0);
+        errors.set(0);
+        outputFailure = null;
+        long start = System.nanoTime();
+
+        // Connect up front, so that an unreachable server fails the run instead of every word
+        List<DictionaryConnection> opened = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++)
+                opened.add(new DictionaryConnection(host, port));
+        } catch (DictConnectionException e) {
+            for (DictionaryConnection connection : opened)
+                connection.close();
+            throw e;
+        }
+
+        BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(2 * connections);
+        List<Thread> workers = new ArrayList<>();
+        for (DictionaryConnection connection : opened) {
+            Thread worker = new Thread(() -> work(connection, batches), "dict-batch-worker-" + workers.size());
+            workers.add(worker);
+            worker.start();
+        }
+
+        try {
+            List<String> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = input.readLine()) != null && outputFailure == null) {
+                String word = line.trim();
+                if (word.isEmpty()) continue;
+                batch.add(word);
+                if (batch.size() == batchSize) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty())
+                batches.put(batch);
+            for (int i = 0; i < workers.size(); i++)
+                batches.put(END);
+            for (Thread worker : workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Thread worker : workers)
+                worker.interrupt();
+            throw new InterruptedIOException("Batch lookup interrupted");
+        }
+
+        if (outputFailure != null)
+            throw outputFailure;
+        output.flush();
+        return new Summary(words.get(), results.get(), errors.get(), System.nanoTime() - start, latency);
+    }
+
+    private void work(DictionaryConnection connection, BlockingQueue<List<String>> batches) {
+        DictionaryPipeline pipeline = open(connection);
+        try {
+            List<String> batch;
+            while ((batch = batches.take()) != END) {
+                List<Map.Entry<String, Throwable>> failed = pipeline != null ? lookup(pipeline, batch) : null;
+                if (failed != null && (failed.isEmpty() || !connection.isBroken())) {
+                    // Negative replies fail only their own words, and leave the connection usable
+                    for (Map.Entry<String, Throwable> entry : failed)
+                        error(entry.getKey(), entry.getValue().getMessage());
+                    continue;
+                }
+                // The connection broke and the words after the failure were not answered; retry the failed words
+                // once, on a new connection
+                List<String> retry = batch;
+                if (failed != null) {
+                    retry = new ArrayList<>();
+                    for (Map.Entry<String, Throwable> entry : failed)
+                        retry.add(entry.getKey());
+                }
+                close(pipeline, connection);
+                try {
+                    connection = new DictionaryConnection(host, port);
+                } catch (DictConnectionException e) {
+                    connection = null;
+                    pipeline = null;
+                    for (String word : retry)
+                        error(word, e.getMessage());
+                    continue;
+                }
+                pipeline = open(connection);
+                failed = lookup(pipeline, retry);
+                for (Map.Entry<String, Throwable> entry : failed)
+                    error(entry.getKey(), entry.getValue().getMessage());
+                if (connection.isBroken()) {
+                    close(pipeline, connection);
+                    connection = null;
+                    pipeline = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(pipeline, connection);
+        }
+    }
+
+    // Each connection keeps one pipeline until it is closed, so its reading thread isn't restarted for every batch
+    private DictionaryPipeline open(DictionaryConnection connection) {
+        DictionaryPipeline pipeline = new DictionaryPipeline(connection);
+        pipeline.setLatencyHistogram(latency);
+        return pipeline;
+    }
+
+    private static void close(DictionaryPipeline pipeline, DictionaryConnection connection) {
+        if (pipeline != null)
+            pipeline.close();
+        if (connection != null)
+            connection.close();
+    }
+
+    /**
+     * Pipelines a batch and writes the results. The latency of each command is recorded by the pipeline.
+     *
+     * @return The words whose lookups failed, with the cause of each failure, in the order of the batch.
+     */
+    private List<Map.Entry<String, Throwable>> lookup(DictionaryPipeline pipeline, List<String> batch) {
+        List<Map.Entry<String, Throwable>> failed = new ArrayList<>();
+        Map<String, ? extends CompletableFuture<? extends Collection<?>>> futures = strategy == null ?
+                pipeline.getDefinitions(batch, database) : pipeline.getMatchLists(batch, strategy, database);
+
+        // Words may repeat within a batch; the map then holds one future for all of them
+        for (String word : batch) {
+            Collection<?> reply;
+            try {
+                reply = futures.get(word).join();
+            } catch (CompletionException e) {
+                failed.add(new AbstractMap.SimpleImmutableEntry<>(word, e.getCause()));
+                continue;
+            }
+            write(word, reply);
+        }
+        return failed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(String word, Collection<?> reply) {
+        words.incrementAndGet();
+        results.addAndGet(reply.size());
+        synchronized (output) {
+            if (outputFailure != null) return;
+            try {
+                if (strategy == null)
+                    output.writeDefinitions(word, (Collection<Definition>) reply);
+                else
+                    output.writeMatches(word, (Collection<String>) reply);
+            } catch (IOException e) {
+                outputFailure = e;
+            }
+        }
+    }
+
+    private void error(String word, String message) {
+        words.incrementAndGet();
+        errors.incrementAndGet();
+        synchronized (output) {
+            if (outputFailure != null) return;
+            try {
+                output.writeError(word, message);
+            } catch (IOException e) {
+                outputFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Looks up a word list. The summary is printed to standard error, so results can be written to standard output.
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = 4, batchSize = 100;
+        String format = "jsonl", database = "*", strategy = null, outputFile = null;
+        List<String> positional = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-c": connections = Integer.parseInt(args[++i]); break;
+                    case "-b": batchSize = Integer.parseInt(args[++i]); break;
+                    case "-d": database = args[++i]; break;
+                    case "-m": strategy = args[++i]; break;
+                    case "-f": format = args[++i]; break;
+                    case "-o": outputFile = args[++i]; break;
+                    default: positional.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            positional.clear();
+        }
+        if (positional.isEmpty() || positional.size() > 2) {
+            System.err.println("Usage: BatchLookup [-c connections] [-b batch] [-d database] [-m strategy] " +
+                    "[-f jsonl|csv] [-o file] host[:port] [wordfile]");
+            System.err.println("Looks up the definitions of each word (or its matches with -m), one word per line " +
+                    "read from wordfile or standard input.");
+            System.exit(1);
+        }
+
+        String[] server = positional.get(0).split(":", 2);
+        BatchLookup lookup = new BatchLookup(server[0], server.length > 1 ? Integer.parseInt(server[1]) : DEFAULT_PORT);
+        lookup.setConnections(connections);
+        lookup.setBatchSize(batchSize);
+        lookup.setDatabase(new Database(database, database));
+        if (strategy != null)
+            lookup.setStrategy(new MatchingStrategy(strategy, strategy));
+
+        BufferedReader input = positional.size() > 1 && !positional.get(1).equals("-") ?
+                Files.newBufferedReader(Paths.get(positional.get(1)), StandardCharsets.UTF_8) :
+                new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        Writer writer = outputFile != null ? Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8) :
+                new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        try (LookupOutput output = LookupOutput.forFormat(format, writer, strategy != null)) {
+            Summary summary = lookup.run(input, output);
+            System.err.println(summary);
+        } finally {
+            input.close();
+        }
+    }
+}
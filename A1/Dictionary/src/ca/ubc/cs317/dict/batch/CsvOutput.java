@@ -0,0 +1,94 @@
+package ca.ubc.cs317.dict.batch;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * Writes CSV (RFC 4180) with a header line and then one row per definition or match. An output holds either
+ * definitions, with the columns word,database,definition,error, or matches, with the columns word,match,error. The
+ * error column is empty except in the row of a failed lookup, where it is the only field set besides the word. Words
+ * without results get a row with empty fields, so every input word appears in the output. Fields are quoted only when
+ * needed; definitions keep their line breaks inside quotes.
+ */
+public class CsvOutput extends LookupOutput {
+
+    private final boolean matches;
+    private boolean headerWritten;
+
+    /**
+     * Creates an output for definitions or, if matches is true, for matches.
+     */
+    public CsvOutput(Writer out, boolean matches) {
+        super(out);
+        this.matches = matches;
+    }
+
+    @Override
+    public void writeDefinitions(String word, Collection<Definition> definitions) throws IOException {
+        if (matches) throw new IllegalStateException("This output holds matches");
+        if (definitions.isEmpty())
+            row(word, "", "", "");
+        for (Definition definition : definitions)
+            row(word, definition.getDatabaseName(), definition.getDefinition(), "");
+    }
+
+    @Override
+    public void writeMatches(String word, Collection<String> matches) throws IOException {
+        if (!this.matches) throw new IllegalStateException("This output holds definitions");
+        if (matches.isEmpty())
+            row(word, "", "");
+        for (String match : matches)
+            row(word, match, "");
+    }
+
+    @Override
+    public void writeError(String word, String message) throws IOException {
+        if (matches)
+            row(word, "", message);
+        else
+            row(word, "", "", message);
+    }
+
+    /**
+     * Flushes the output, writing the header first if no row was written yet, so even an empty output has its columns.
+     */
+    @Override
+    public void flush() throws IOException {
+        header();
+        super.flush();
+    }
+
+    private void header() throws IOException {
+        if (headerWritten) return;
+        headerWritten = true;
+        out.write(matches ? "word,match,error\r\n" : "word,database,definition,error\r\n");
+    }
+
+    private void row(String... fields) throws IOException {
+        header();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.write(',');
+            field(fields[i]);
+        }
+        out.write("\r\n");
+    }
+
+    private void field(String s) throws IOException {
+        if (s == null) return;
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        out.write(s.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
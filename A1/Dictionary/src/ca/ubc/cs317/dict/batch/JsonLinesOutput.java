@@ -0,0 +1,88 @@
+package ca.ubc.cs317.dict.batch;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * Writes one JSON object per line:
+ * <pre>
+ * {"word":"cat","definitions":[{"database":"wn","text":"..."}]}
+ * {"word":"cat","matches":["cat","catalog"]}
+ * {"word":"cat","error":"..."}
+ * </pre>
+ */
+public class JsonLinesOutput extends LookupOutput {
+
+    public JsonLinesOutput(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void writeDefinitions(String word, Collection<Definition> definitions) throws IOException {
+        out.write("{\"word\":");
+        string(word);
+        out.write(",\"definitions\":[");
+        boolean first = true;
+        for (Definition definition : definitions) {
+            if (!first) out.write(',');
+            first = false;
+            out.write("{\"database\":");
+            string(definition.getDatabaseName());
+            out.write(",\"text\":");
+            string(definition.getDefinition());
+            out.write('}');
+        }
+        out.write("]}\n");
+    }
+
+    @Override
+    public void writeMatches(String word, Collection<String> matches) throws IOException {
+        out.write("{\"word\":");
+        string(word);
+        out.write(",\"matches\":[");
+        boolean first = true;
+        for (String match : matches) {
+            if (!first) out.write(',');
+            first = false;
+            string(match);
+        }
+        out.write("]}\n");
+    }
+
+    @Override
+    public void writeError(String word, String message) throws IOException {
+        out.write("{\"word\":");
+        string(word);
+        out.write(",\"error\":");
+        string(message);
+        out.write("}\n");
+    }
+
+    private void string(String s) throws IOException {
+        if (s == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+            out.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default: out.write(String.format("\\u%04x", (int) c));
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
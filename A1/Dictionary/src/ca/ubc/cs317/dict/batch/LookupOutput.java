@@ -0,0 +1,63 @@
+package ca.ubc.cs317.dict.batch;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * Where BatchLookup writes its results, one record per word. Records are written as soon as the reply for a word is
+ * read, so they appear in the order lookups complete, which is not necessarily the order of the input. Calls are
+ * serialized by BatchLookup.
+ */
+public abstract class LookupOutput implements AutoCloseable {
+
+    protected final Writer out;
+
+    protected LookupOutput(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the definitions found for a word (possibly none).
+     */
+    public abstract void writeDefinitions(String word, Collection<Definition> definitions) throws IOException;
+
+    /**
+     * Writes the matches found for a word (possibly none).
+     */
+    public abstract void writeMatches(String word, Collection<String> matches) throws IOException;
+
+    /**
+     * Writes a word whose lookup failed.
+     */
+    public abstract void writeError(String word, String message) throws IOException;
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Returns the output for a format name: "jsonl" (JSON Lines) or "csv".
+     *
+     * @param matches True if the output will hold matches rather than definitions (which decides the CSV columns).
+     * @throws IllegalArgumentException If the format is unknown.
+     */
+    public static LookupOutput forFormat(String format, Writer out, boolean matches) {
+        switch (format) {
+            case "jsonl":
+            case "json":
+                return new JsonLinesOutput(out);
+            case "csv":
+                return new CsvOutput(out, matches);
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + format);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.net.CompactDefinitionStore;
+import ca.ubc.cs317.dict.server.DictdDatabase;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the heap used by a number of definitions kept as Definition objects (as in DefinitionCache and
+ * DefinitionTableModel) with the same definitions in a CompactDefinitionStore, and measures the cost of materializing
+ * a Definition from the store. The definitions are either read from dictd databases or generated from a vocabulary
+ * with a skewed word distribution, which is roughly what dictionary text looks like.
+ * <p>
+ * Heap usage is measured as the difference in used memory after garbage collection, so run it with a heap large
+ * enough for both copies and nothing else going on: java -Xmx2g ca.ubc.cs317.dict.bench.DefinitionFootprintBenchmark
+ * [definitions | dictd-directory]
+ */
+public class DefinitionFootprintBenchmark {
+
+    private static final String[] DATABASES = {"gcide", "wn", "moby-thesaurus", "foldoc", "jargon"};
+
+    public static void main(String[] args) throws Exception {
+        List<Definition> source;
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            source = new ArrayList<>();
+            for (DictdDatabase database : DictdDatabase.loadDirectory(Paths.get(args[0]))) {
+                for (int i = 0; i < database.size(); i++) {
+                    Definition definition = new Definition(database.getHeadword(i), database.getName());
+                    definition.setDefinition(database.getText(i));
+                    source.add(definition);
+                }
+            }
+        } else {
+            source = generate(args.length > 0 ? Integer.parseInt(args[0]) : 200_000);
+        }
+        System.out.printf("%d definitions%n", source.size());
+
+        // Both copies are built from the raw texts, so the source list itself is not counted
+        String[][] raw = new String[source.size()][];
+        for (int i = 0; i < raw.length; i++) {
+            Definition d = source.get(i);
+            raw[i] = new String[]{d.getWord(), d.getDatabaseName(), d.getDefinition()};
+        }
+        source = null;
+
+        long base = usedMemory();
+        long start = System.nanoTime();
+        List<Definition> objects = new ArrayList<>(raw.length);
+        for (String[] r : raw) {
+            // Each definition gets its own Strings, as when parsed from a reply
+            Definition definition = new Definition(new String(r[0].toCharArray()), new String(r[1].toCharArray()));
+            definition.setDefinition(new String(r[2].toCharArray()));
+            objects.add(definition);
+        }
+        long objectTime = System.nanoTime() - start;
+        long objectBytes = usedMemory() - base;
+
+        // The objects stay reachable (to check the store against them), so they are part of both measurements
+        List<Definition> check = objects;
+        objects = null;
+        base = usedMemory();
+        start = System.nanoTime();
+        CompactDefinitionStore store = new CompactDefinitionStore();
+        int[] ids = new int[check.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = store.add(check.get(i));
+        long storeTime = System.nanoTime() - start;
+        long storeBytes = usedMemory() - base;
+
+        for (int i = 0; i < ids.length; i += Math.max(1, ids.length / 1000))
+            // Also keeps the raw texts reachable until after all measurements
+            if (!store.get(ids[i]).equals(check.get(i)) || !check.get(i).getWord().equals(raw[i][0]))
+                throw new AssertionError("Different definition " + i);
+
+        Random random = new Random(3);
+        long sink = 0;
+        for (int i = 0; i < 200_000; i++)
+            sink += store.get(ids[random.nextInt(ids.length)]).getDefinition().length();
+        start = System.nanoTime();
+        int gets = 200_000;
+        for (int i = 0; i < gets; i++)
+            sink += store.get(ids[random.nextInt(ids.length)]).getDefinition().length();
+        long getTime = System.nanoTime() - start;
+
+        System.out.printf("%-22s %10.1f MB %8.1f bytes/definition %8.1f ms to build%n", "Definition objects",
+                objectBytes / 1e6, (double) objectBytes / ids.length, objectTime / 1e6);
+        System.out.printf("%-22s %10.1f MB %8.1f bytes/definition %8.1f ms to build%n", "CompactDefinitionStore",
+                storeBytes / 1e6, (double) storeBytes / ids.length, storeTime / 1e6);
+        System.out.printf("Ratio %.2fx, store records %.1f MB, get %.2f us/definition (%d)%n",
+                (double) objectBytes / storeBytes, store.getLiveBytes() / 1e6, getTime / 1e3 / gets, sink % 10);
+    }
+
+    private static List<Definition> generate(int count) {
+        Random random = new Random(1);
+        String[] vocabulary = new String[5000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(3);
+            for (int j = 0; j < syllables; j++)
+                word.append("bcdfghklmnprstvw".charAt(random.nextInt(16))).append("aeiou".charAt(random.nextInt(5)));
+            vocabulary[i] = word.toString();
+        }
+        List<Definition> definitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String headword = vocabulary[random.nextInt(vocabulary.length)] + i;
+            Definition definition = new Definition(headword, DATABASES[random.nextInt(DATABASES.length)]);
+            StringBuilder text = new StringBuilder(headword).append("\n");
+            int lines = 2 + random.nextInt(8);
+            for (int l = 0; l < lines; l++) {
+                text.append("     ");
+                int words = 6 + random.nextInt(6);
+                for (int w = 0; w < words; w++) {
+                    // Skewed towards the start of the vocabulary, like word frequencies in real text
+                    double u = random.nextDouble();
+                    text.append(vocabulary[(int) (vocabulary.length * u * u * u)]).append(w + 1 < words ? " " : "");
+                }
+                text.append(l == 0 ? "; [syn: " + vocabulary[random.nextInt(50)] + "]\n" : "\n");
+            }
+            definition.setDefinition(text.toString());
+            definitions.add(definition);
+        }
+        return definitions;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,100 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictStringParser;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.Status;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Benchmarks the hot paths of the DICT client against an in-process FakeDictServer: getMatchList, getDefinitions and
+ * getDatabaseList over a loopback connection, and the Status and DictStringParser parsing paths on their own. For each
+ * operation it reports throughput, allocated bytes per operation (measured on the calling thread) and p50/p99/max
+ * latency.
+ * <p>
+ * Run with: java ca.ubc.cs317.dict.bench.DictionaryBenchmark [seconds] [matches] [definitions] [definitionLines]
+ */
+public class DictionaryBenchmark {
+
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+        int matchCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int definitionCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int definitionLines = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        System.out.printf("matches=%d definitions=%dx%d lines, %.1fs per operation%n",
+                matchCount, definitionCount, definitionLines, seconds);
+        System.out.printf("%-18s %12s %14s %10s %10s %10s%n", "operation", "ops/s", "bytes/op", "p50 us", "p99 us", "max us");
+
+        try (FakeDictServer server = new FakeDictServer(20, matchCount, definitionCount, definitionLines)) {
+            DictionaryConnection connection = new DictionaryConnection(server.getHost(), server.getPort());
+            Database all = new Database("*", "All databases");
+            MatchingStrategy prefix = new MatchingStrategy("prefix", "Match prefixes");
+
+            measure("getMatchList", seconds, () -> connection.getMatchList("word", prefix, all).size());
+            measure("getDefinitions", seconds, () -> connection.getDefinitions("word", all).size());
+            measure("getDatabaseList", seconds, () -> connection.getDatabaseList().size());
+            connection.close();
+        }
+
+        String statusLines = "152 1000 matches found\n".repeat(1000);
+        measure("Status x1000", seconds, () -> {
+            BufferedReader in = new BufferedReader(new StringReader(statusLines));
+            long h = 0;
+            for (int i = 0; i < 1000; i++) h += Status.readStatus(in).getStatusCode();
+            return h;
+        });
+        measure("splitAtoms x1000", seconds, () -> {
+            long h = 0;
+            for (int i = 0; i < 1000; i++)
+                h += DictStringParser.splitAtoms("gcide \"The Collaborative International Dictionary\"").length;
+            return h;
+        });
+
+        if (sink == 42) System.out.println();
+    }
+
+    private static void measure(String name, double seconds, Operation operation) throws Exception {
+        // Warm-up for a third of the measurement time
+        long warmupEnd = System.nanoTime() + (long) (seconds * 1e9 / 3);
+        while (System.nanoTime() < warmupEnd)
+            sink += operation.run();
+
+        long[] latencies = new long[1 << 16];
+        int count = 0;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        long now = start;
+        while (now < end) {
+            sink += operation.run();
+            long after = System.nanoTime();
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = after - now;
+            now = after;
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        Arrays.sort(latencies, 0, count);
+        System.out.printf("%-18s %12.0f %14d %10.1f %10.1f %10.1f%n", name, count / ((now - start) / 1e9),
+                allocated / count, latencies[count / 2] / 1e3, latencies[(int) (count * 0.99)] / 1e3,
+                latencies[count - 1] / 1e3);
+    }
+}
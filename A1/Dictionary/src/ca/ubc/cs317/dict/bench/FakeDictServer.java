@@ -0,0 +1,132 @@
+package ca.ubc.cs317.dict.bench;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal in-process DICT server for benchmarks. It replays canned RFC 2229 replies whose size is set when the
+ * server is created, regardless of the word requested, so the client's hot paths can be measured without network
+ * latency or a real dictionary. Each client is served by its own thread.
+ */
+public class FakeDictServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final byte[] banner;
+    private final byte[] databases;
+    private final byte[] strategies;
+    private final byte[] matches;
+    private final byte[] definitions;
+    private final byte[] status = bytes("210 status [d/m/c = 0/0/0; 0.000r 0.000u 0.000s]\r\n");
+    private final byte[] bye = bytes("221 bye\r\n");
+    private final byte[] unknown = bytes("500 unknown command\r\n");
+
+    /**
+     * Starts a server on an ephemeral port of the loopback interface.
+     *
+     * @param databaseCount   Number of databases returned by SHOW DB.
+     * @param matchCount      Number of matches returned by every MATCH.
+     * @param definitionCount Number of definitions returned by every DEFINE.
+     * @param definitionLines Number of text lines in each definition.
+     */
+    public FakeDictServer(int databaseCount, int matchCount, int definitionCount, int definitionLines) throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        banner = bytes("220 fake.dict.server dictd 1.12.1 <auth.mime> <100.0@fake>\r\n");
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("110 ").append(databaseCount).append(" databases present\r\n");
+        for (int i = 0; i < databaseCount; i++)
+            sb.append("db").append(i).append(" \"Fake database number ").append(i).append("\"\r\n");
+        sb.append(".\r\n250 ok\r\n");
+        databases = bytes(sb.toString());
+
+        strategies = bytes("111 3 strategies present\r\nexact \"Match headwords exactly\"\r\n" +
+                "prefix \"Match prefixes\"\r\nsubstring \"Match substring occurring anywhere in a headword\"\r\n" +
+                ".\r\n250 ok\r\n");
+
+        sb.setLength(0);
+        sb.append("152 ").append(matchCount).append(" matches found\r\n");
+        for (int i = 0; i < matchCount; i++)
+            sb.append("db").append(i % Math.max(1, databaseCount)).append(" \"match word ").append(i).append("\"\r\n");
+        sb.append(".\r\n250 ok [d/m/c = 0/").append(matchCount).append("/0; 0.000r 0.000u 0.000s]\r\n");
+        matches = bytes(sb.toString());
+
+        sb.setLength(0);
+        sb.append("150 ").append(definitionCount).append(" definitions retrieved\r\n");
+        for (int i = 0; i < definitionCount; i++) {
+            sb.append("151 \"word\" db").append(i % Math.max(1, databaseCount)).append(" \"Fake database\"\r\n");
+            for (int j = 0; j < definitionLines; j++)
+                sb.append("  line ").append(j).append(" of a canned definition, long enough to look like real text\r\n");
+            sb.append(".\r\n");
+        }
+        sb.append("250 ok [d/m/c = ").append(definitionCount).append("/0/0; 0.000r 0.000u 0.000s]\r\n");
+        definitions = bytes(sb.toString());
+
+        Thread acceptor = new Thread(this::acceptClients, "fake-dict-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void acceptClients() {
+        try {
+            while (true) {
+                Socket client = serverSocket.accept();
+                Thread handler = new Thread(() -> serve(client), "fake-dict-client");
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (SocketException e) {
+            // server closed
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket socket = client) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            out.write(banner);
+            out.flush();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.trim().toUpperCase();
+                if (command.startsWith("SHOW DB")) out.write(databases);
+                else if (command.startsWith("SHOW STRAT")) out.write(strategies);
+                else if (command.startsWith("MATCH")) out.write(matches);
+                else if (command.startsWith("DEFINE")) out.write(definitions);
+                else if (command.startsWith("STATUS")) out.write(status);
+                else if (command.startsWith("QUIT")) {
+                    out.write(bye);
+                    out.flush();
+                    return;
+                } else out.write(unknown);
+                // Pipelined commands are answered together
+                if (!in.ready()) out.flush();
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
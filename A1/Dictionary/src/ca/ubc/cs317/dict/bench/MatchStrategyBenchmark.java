@@ -0,0 +1,125 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.local.MatchEngine;
+import ca.ubc.cs317.dict.server.DictdDatabase;
+
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Measures the latency of each matching strategy of MatchEngine, with its index and with a plain scan of all
+ * headwords, after checking that both return the same matches. The headwords are either read from a dictd database or
+ * generated (pronounceable random words), and the queries are derived from random headwords, so most of them match.
+ * <p>
+ * Run with: java ca.ubc.cs317.dict.bench.MatchStrategyBenchmark [words | dictd-directory] [queries]
+ */
+public class MatchStrategyBenchmark {
+
+    private static final String CONSONANTS = "bcdfghjklmnprstvwz";
+    private static final String VOWELS = "aeiou";
+
+    public static void main(String[] args) throws Exception {
+        List<String> words = new ArrayList<>();
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            for (DictdDatabase database : DictdDatabase.loadDirectory(Paths.get(args[0])))
+                for (int i = 0; i < database.size(); i++)
+                    words.add(database.getHeadword(i));
+        } else {
+            int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+            Random random = new Random(1);
+            Set<String> generated = new HashSet<>();
+            while (generated.size() < count) {
+                StringBuilder word = new StringBuilder();
+                int syllables = 1 + random.nextInt(4);
+                for (int i = 0; i < syllables; i++)
+                    word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())))
+                            .append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+                if (random.nextBoolean()) word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+                generated.add(word.toString());
+            }
+            words.addAll(generated);
+        }
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        MatchEngine engine = new MatchEngine(words);
+        System.out.printf("%d headwords, %d queries per strategy%n%n", engine.size(), queryCount);
+        System.out.printf("%-10s %12s %12s %12s %10s%n", "strategy", "index build", "indexed", "scan", "matches");
+
+        Random random = new Random(2);
+        for (String strategy : new String[]{"exact", "prefix", "substring", "suffix", "re", "soundex", "lev"}) {
+            String[] queries = new String[queryCount];
+            for (int i = 0; i < queryCount; i++)
+                queries[i] = query(strategy, words.get(random.nextInt(words.size())).toLowerCase(Locale.ROOT), random);
+
+            long start = System.nanoTime();
+            engine.match(queries[0], strategy);
+            long build = System.nanoTime() - start;
+
+            long matches = 0;
+            for (String query : queries) {
+                List<String> indexed = engine.match(query, strategy);
+                if (!indexed.equals(engine.matchByScan(query, strategy)))
+                    throw new AssertionError("Different matches for " + strategy + " " + query);
+                matches += indexed.size();
+            }
+
+            double indexed = best(queries, q -> engine.match(q, strategy).size());
+            double scan = best(queries, q -> engine.matchByScan(q, strategy).size());
+            System.out.printf("%-10s %9.1f ms %9.1f us %9.1f us %10.1f%n", strategy, build / 1e6, indexed / 1e3,
+                    scan / 1e3, (double) matches / queryCount);
+        }
+    }
+
+    private static String query(String strategy, String word, Random random) {
+        switch (strategy) {
+            case "prefix":
+                return word.substring(0, Math.min(word.length(), 3));
+            case "substring": {
+                int length = Math.min(word.length(), 3 + random.nextInt(2));
+                int start = random.nextInt(word.length() - length + 1);
+                return word.substring(start, start + length);
+            }
+            case "suffix":
+                return word.substring(Math.max(0, word.length() - 3));
+            case "re":
+                if (word.length() <= 4)
+                    return word + "$";
+                switch (random.nextInt(3)) {
+                    case 0:
+                        // A required literal in the middle, surrounded by wildcards
+                        return "^" + word.charAt(0) + ".*" + word.substring(1, 4);
+                    case 1:
+                        // Quantifiers whose bounds are longer than any literal, and must not be taken for one
+                        return "[a-z]{2}" + word.charAt(2) + "[a-z]{0,100}$";
+                    default:
+                        return word.charAt(0) + "{1,100}" + word.substring(1, 3);
+                }
+            case "lev": {
+                // One random substitution
+                int i = random.nextInt(word.length());
+                return word.substring(0, i) + (char) ('a' + random.nextInt(26)) + word.substring(i + 1);
+            }
+            default:
+                return word;
+        }
+    }
+
+    private interface Query {
+        int run(String query);
+    }
+
+    // Best average time per query over several rounds, in nanoseconds
+    private static double best(String[] queries, Query query) {
+        long sink = 0;
+        for (int i = 0; i < 3; i++)
+            for (String q : queries) sink += query.run(q);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            for (String q : queries) sink += query.run(q);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 42) System.out.print("");
+        return (double) best / queries.length;
+    }
+}
@@ -0,0 +1,96 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.net.DictLineTokenizer;
+import ca.ubc.cs317.dict.net.DictStringParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the original regex-based splitAtoms with DictLineTokenizer on typical MATCH, SHOW DB and 151 lines. There
+ * is no JMH in this project, so this is a plain main method: each variant is warmed up and then timed over several
+ * rounds, and the best round is reported in nanoseconds per line.
+ * <p>
+ * Run with: java ca.ubc.cs317.dict.bench.SplitAtomsBenchmark [lines]
+ */
+public class SplitAtomsBenchmark {
+
+    // The implementation of DictStringParser.splitAtoms before the tokenizer was introduced
+    private static final Pattern STRING_UNIT = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+
+    static String[] regexSplitAtoms(String original) {
+        List<String> list = new ArrayList<>();
+        Matcher m = STRING_UNIT.matcher(original);
+        while (m.find()) {
+            list.add(m.group(m.group(1) != null ? 1 : 2));
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    private interface Variant {
+        long run(String[] lines);
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            switch (i % 3) {
+                case 0: lines[i] = "wn \"word" + i + "\""; break;
+                case 1: lines[i] = "gcide \"The Collaborative International Dictionary of English v.0.48\""; break;
+                default: lines[i] = "\"compound word " + i + "\" foldoc \"The Free On-line Dictionary of Computing\"";
+            }
+        }
+
+        for (String line : lines) {
+            if (!String.join("|", regexSplitAtoms(line)).equals(String.join("|", DictStringParser.splitAtoms(line))))
+                throw new AssertionError("Different atoms for " + line);
+        }
+
+        report("regex splitAtoms", lines, l -> {
+            long h = 0;
+            for (String line : l) h += regexSplitAtoms(line)[1].length();
+            return h;
+        });
+        report("splitAtoms", lines, l -> {
+            long h = 0;
+            for (String line : l) h += DictStringParser.splitAtoms(line)[1].length();
+            return h;
+        });
+        report("tokenizer atom()", lines, l -> {
+            long h = 0;
+            DictLineTokenizer tokens = new DictLineTokenizer();
+            for (String line : l) {
+                tokens.reset(line).skip(1);
+                tokens.next();
+                h += tokens.atom().length();
+            }
+            return h;
+        });
+        report("tokenizer offsets", lines, l -> {
+            long h = 0;
+            DictLineTokenizer tokens = new DictLineTokenizer();
+            for (String line : l) {
+                tokens.reset(line).skip(1);
+                tokens.next();
+                h += tokens.atomEnd() - tokens.atomStart();
+            }
+            return h;
+        });
+    }
+
+    private static void report(String name, String[] lines, Variant variant) {
+        long sink = 0;
+        for (int i = 0; i < 10; i++)
+            sink += variant.run(lines);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            sink += variant.run(lines);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-20s %8.1f ns/line   (%d)%n", name, (double) best / lines.length, sink % 10);
+    }
+}
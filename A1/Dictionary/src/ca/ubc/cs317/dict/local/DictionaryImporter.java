@@ -0,0 +1,231 @@
+package ca.ubc.cs317.dict.local;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryPipeline;
+import ca.ubc.cs317.dict.server.DictdWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Copies databases from a DICT server into local dictd files, which can then be opened with LocalDictionary (or served
+ * with EmbeddedDictServer). Servers have no command to list all headwords, so they are enumerated with prefix MATCH
+ * commands for a set of seed prefixes (by default, every letter and digit), and then fetched with DEFINE. Both phases
+ * are pipelined, in batches, over a single connection.
+ * <p>
+ * Servers may also cut long MATCH replies short (dictd, for instance, can be configured to). A reply with as many
+ * matches as the result limit is taken to be truncated, and its prefix is split into longer ones (the prefix followed
+ * by each letter, digit or other character found after it in the matches), which are matched in turn.
+ */
+public class DictionaryImporter {
+
+    private static final MatchingStrategy PREFIX = new MatchingStrategy("prefix", "Match prefixes");
+    private static final MatchingStrategy EXACT = new MatchingStrategy("exact", "Match headwords exactly");
+
+    // Characters appended to a truncated prefix, besides those found after it in its matches
+    private static final String EXTENSIONS = "abcdefghijklmnopqrstuvwxyz0123456789 -'.";
+
+    // Prefixes are not split past this length, which bounds the number of commands if a server limits every reply
+    private static final int MAX_PREFIX_LENGTH = 16;
+
+    private final DictionaryConnection connection;
+    private List<String> seeds = new ArrayList<>();
+    private int batchSize = 200;
+    private int resultLimit = 1000;
+
+    /**
+     * Creates an importer that uses an established connection. The connection must not be used by anyone else during
+     * an import.
+     */
+    public DictionaryImporter(DictionaryConnection connection) {
+        this.connection = connection;
+        for (char c = 'a'; c <= 'z'; c++) seeds.add(String.valueOf(c));
+        for (char c = '0'; c <= '9'; c++) seeds.add(String.valueOf(c));
+    }
+
+    /**
+     * Sets the prefixes used to enumerate headwords. Headwords not starting with any of them are not imported.
+     */
+    public void setSeeds(Collection<String> seeds) {
+        this.seeds = new ArrayList<>(seeds);
+    }
+
+    /**
+     * Sets the number of commands sent back to back before waiting for their replies.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of matches at which a MATCH reply is taken to be truncated by the server, and its prefix split
+     * into longer ones. Zero disables splitting.
+     */
+    public void setResultLimit(int resultLimit) {
+        this.resultLimit = resultLimit;
+    }
+
+    /**
+     * Imports every database listed by the server.
+     *
+     * @param directory The directory where the database files are written.
+     * @return The total number of definitions imported.
+     * @throws DictConnectionException If the connection fails or a reply is invalid.
+     * @throws IOException             If the files can't be written.
+     */
+    public int importAll(Path directory) throws DictConnectionException, IOException {
+        int total = 0;
+        for (Database database : connection.getDatabaseList().values())
+            total += importDatabase(database, directory);
+        return total;
+    }
+
+    /**
+     * Imports a single database into <tt>name.index</tt> and <tt>name.dict</tt> files, replacing existing files.
+     *
+     * @param database  The database to import (not a special database).
+     * @param directory The directory where the database files are written.
+     * @return The number of definitions imported.
+     * @throws DictConnectionException If the connection fails or a reply is invalid.
+     * @throws IOException             If the files can't be written.
+     */
+    public int importDatabase(Database database, Path directory) throws DictConnectionException, IOException {
+        Set<String> headwords = new TreeSet<>();
+        try (DictionaryPipeline pipeline = new DictionaryPipeline(connection)) {
+            List<String> prefixes = seeds;
+            while (!prefixes.isEmpty()) {
+                List<String> split = new ArrayList<>();
+                for (List<String> batch : batches(prefixes)) {
+                    List<String> truncated = new ArrayList<>();
+                    for (Map.Entry<String, CompletableFuture<Set<String>>> entry :
+                            pipeline.getMatchLists(batch, PREFIX, database).entrySet()) {
+                        Set<String> matches = join(entry.getValue());
+                        headwords.addAll(matches);
+                        if (resultLimit <= 0 || matches.size() < resultLimit) continue;
+                        String prefix = entry.getKey();
+                        if (prefix.length() >= MAX_PREFIX_LENGTH) {
+                            System.err.printf("Matches for %s in %s may be incomplete%n", prefix, database.getName());
+                            continue;
+                        }
+                        truncated.add(prefix);
+                        split.addAll(extend(prefix, matches));
+                    }
+                    // The longer prefixes don't cover the truncated prefix itself, if it is a headword
+                    for (CompletableFuture<Set<String>> matches :
+                            pipeline.getMatchLists(truncated, EXACT, database).values())
+                        headwords.addAll(join(matches));
+                }
+                prefixes = split;
+            }
+        }
+
+        // DEFINE is case-insensitive, so headwords differing only in case are fetched once
+        Set<String> requested = new HashSet<>();
+        List<String> words = new ArrayList<>();
+        for (String headword : headwords)
+            if (!isDatabaseInfo(headword) && requested.add(headword.toLowerCase(Locale.ROOT)))
+                words.add(headword);
+
+        try (DictdWriter writer = new DictdWriter(directory, database.getName(), database.getDescription());
+             DictionaryPipeline pipeline = new DictionaryPipeline(connection)) {
+            for (List<String> batch : batches(words)) {
+                for (Map.Entry<String, CompletableFuture<Collection<Definition>>> entry :
+                        pipeline.getDefinitions(batch, database).entrySet()) {
+                    for (Definition definition : join(entry.getValue())) {
+                        // The server reports the headword of each entry, which may differ in case from the request
+                        String headword = definition.getWord() != null ? definition.getWord() : entry.getKey();
+                        String text = definition.getDefinition();
+                        writer.add(headword, text == null ? "" : text + "\n");
+                    }
+                }
+            }
+            return writer.getEntryCount();
+        }
+    }
+
+    /**
+     * Checks if a headword is one of the entries dictd uses to describe a database (00-database-short, etc.). The
+     * writer creates its own.
+     */
+    static boolean isDatabaseInfo(String headword) {
+        return headword.startsWith("00-database-") || headword.startsWith("00database");
+    }
+
+    /**
+     * Returns the prefixes that a truncated prefix is split into: the prefix followed by each extension character, and
+     * by each character that follows it in its matches.
+     */
+    private static Collection<String> extend(String prefix, Set<String> matches) {
+        Set<String> extended = new LinkedHashSet<>();
+        for (int i = 0; i < EXTENSIONS.length(); i++)
+            extended.add(prefix + EXTENSIONS.charAt(i));
+        for (String match : matches) {
+            if (match.length() <= prefix.length() || !match.regionMatches(true, 0, prefix, 0, prefix.length()))
+                continue;
+            char next = Character.toLowerCase(match.charAt(prefix.length()));
+            // Quotes and backslashes can't be sent in a quoted word
+            if (next != '"' && next != '\\') extended.add(prefix + next);
+        }
+        return extended;
+    }
+
+    private List<List<String>> batches(List<String> words) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < words.size(); i += batchSize)
+            batches.add(words.subList(i, Math.min(words.size(), i + batchSize)));
+        return batches;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws DictConnectionException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DictConnectionException)
+                throw (DictConnectionException) e.getCause();
+            throw new DictConnectionException(e.getCause());
+        }
+    }
+
+    /**
+     * Imports databases from a server. Usage: DictionaryImporter host[:port] directory [database...]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: DictionaryImporter host[:port] directory [database...]");
+            System.exit(1);
+        }
+        String[] server = args[0].split(":", 2);
+        DictionaryConnection connection = server.length > 1 ?
+                new DictionaryConnection(server[0], Integer.parseInt(server[1])) :
+                new DictionaryConnection(server[0], 2628);
+        try {
+            DictionaryImporter importer = new DictionaryImporter(connection);
+            Path directory = Paths.get(args[1]);
+            long start = System.nanoTime();
+            int count;
+            if (args.length == 2) {
+                count = importer.importAll(directory);
+            } else {
+                Map<String, Database> databases = connection.getDatabaseList();
+                count = 0;
+                for (int i = 2; i < args.length; i++) {
+                    Database database = databases.get(args[i]);
+                    if (database == null)
+                        throw new DictConnectionException("Unknown database: " + args[i]);
+                    count += importer.importDatabase(database, directory);
+                }
+            }
+            System.out.printf("Imported %d definitions in %.1f s%n", count, (System.nanoTime() - start) / 1e9);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ca.ubc.cs317.dict.local;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictionaryService;
+import ca.ubc.cs317.dict.server.DictdDatabase;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A dictionary answered entirely from local dictd files (for instance, files created by DictionaryImporter), with the
+ * same operations as a connection to a DICT server but without any network round trip. All databases are loaded when
+ * the dictionary is opened; lookups only touch memory and the memory-mapped data files.
+ * <p>
+ * The special databases "*" and "!" behave as on a server. Requests for an unknown database or strategy fail with a
+ * DictConnectionException, like the corresponding server error.
+ */
+public class LocalDictionary implements DictionaryService {
+
+    private final Map<String, DictdDatabase> databases = new LinkedHashMap<>();
+    private final Map<String, MatchEngine> engines = new HashMap<>();
+    private final Map<String, Database> databaseList = new LinkedHashMap<>();
+
+    /**
+     * Creates a dictionary over already loaded databases, in the order given.
+     */
+    public LocalDictionary(List<DictdDatabase> databases) {
+        for (DictdDatabase database : databases) {
+            this.databases.put(database.getName(), database);
+            this.databaseList.put(database.getName(), new Database(database.getName(), database.getDescription()));
+            List<String> headwords = new ArrayList<>(database.size());
+            for (int i = 0; i < database.size(); i++) {
+                String headword = database.getHeadword(i);
+                // Database information entries are not words
+                if (!DictionaryImporter.isDatabaseInfo(headword))
+                    headwords.add(headword);
+            }
+            engines.put(database.getName(), new MatchEngine(headwords));
+        }
+    }
+
+    /**
+     * Opens all databases found in a directory (see DictdDatabase.loadDirectory).
+     */
+    public static LocalDictionary open(Path directory) throws IOException {
+        return new LocalDictionary(DictdDatabase.loadDirectory(directory));
+    }
+
+    @Override
+    public Map<String, Database> getDatabaseList() {
+        return Collections.unmodifiableMap(databaseList);
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() {
+        return new LinkedHashSet<>(MatchEngine.STRATEGIES);
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
+        Set<String> result = new LinkedHashSet<>();
+        for (String name : selectDatabases(database)) {
+            List<String> matches = engines.get(name).match(word, strategy.getName());
+            if (matches == null)
+                throw new DictConnectionException("Invalid strategy: " + strategy.getName());
+            result.addAll(matches);
+            if (database.getName().equals("!") && !matches.isEmpty()) break;
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        List<Definition> definitions = new ArrayList<>();
+        getDefinitions(word, database, definitions::add);
+        return definitions;
+    }
+
+    @Override
+    public int getDefinitions(String word, Database database, Consumer<Definition> consumer)
+            throws DictConnectionException {
+        int count = 0;
+        for (String name : selectDatabases(database)) {
+            DictdDatabase dictd = databases.get(name);
+            List<Integer> entries = dictd.findEntries(word);
+            for (int entry : entries) {
+                // Labelled with the headword found, like the definitions of a DICT server, not the word as requested
+                Definition definition = new Definition(dictd.getHeadword(entry), name);
+                definition.setDefinition(dictd.getText(entry));
+                consumer.accept(definition);
+                count++;
+            }
+            if (database.getName().equals("!") && !entries.isEmpty()) break;
+        }
+        return count;
+    }
+
+    /**
+     * Nothing to release: the data files are unmapped when the dictionary is garbage collected.
+     */
+    @Override
+    public void close() {
+    }
+
+    private Collection<String> selectDatabases(Database database) throws DictConnectionException {
+        String name = database.getName();
+        if (name.equals("*") || name.equals("!"))
+            return databases.keySet();
+        if (!databases.containsKey(name))
+            throw new DictConnectionException("Invalid database: " + name);
+        return Collections.singletonList(name);
+    }
+}
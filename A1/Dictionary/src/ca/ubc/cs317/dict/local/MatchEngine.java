@@ -0,0 +1,519 @@
+package ca.ubc.cs317.dict.local;
+
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Implements the usual DICT matching strategies over the headwords of one database. Matching is case-insensitive,
+ * and results are the original headwords in alphabetical (case-insensitive) order, without duplicates.
+ * <p>
+ * Each strategy has its own index, built the first time the strategy is used:
+ * <ul>
+ *     <li>exact and prefix: a binary search over the sorted headwords (no extra index);</li>
+ *     <li>suffix: a binary search over the reversed headwords, sorted;</li>
+ *     <li>substring: a trigram index; the candidates containing all trigrams of the word are then checked;</li>
+ *     <li>soundex: a map from Soundex code to headwords;</li>
+ *     <li>lev: a BK-tree, which only visits the subtrees that can contain words within the distance;</li>
+ *     <li>re: the expression is scanned for literal text that every match must contain, which selects the candidates
+ *     through the prefix range or the trigram index before the expression itself is evaluated.</li>
+ * </ul>
+ * An engine is safe for use by several threads.
+ */
+public class MatchEngine {
+
+    /**
+     * The strategies supported by the engine, with the descriptions used by dictd.
+     */
+    public static final List<MatchingStrategy> STRATEGIES = List.of(
+            new MatchingStrategy("exact", "Match headwords exactly"),
+            new MatchingStrategy("prefix", "Match prefixes"),
+            new MatchingStrategy("substring", "Match substring occurring anywhere in a headword"),
+            new MatchingStrategy("suffix", "Match suffixes"),
+            new MatchingStrategy("re", "POSIX 1003.2 (modern) regular expressions"),
+            new MatchingStrategy("soundex", "Match using SOUNDEX algorithm"),
+            new MatchingStrategy("lev", "Match headwords within Levenshtein distance one"));
+
+    private static final int[] NO_WORDS = new int[0];
+
+    private final String[] headwords;   // sorted by lower-case headword, distinct
+    private final String[] normalized;  // lower-case headwords, same order
+
+    // Indexes built on first use
+    private volatile int[] suffixOrder;
+    private volatile String[] reversed;
+    private volatile Map<Long, int[]> trigrams;
+    private volatile Map<String, int[]> soundexCodes;
+    private volatile BkNode bkTree;
+
+    /**
+     * Creates an engine for a set of headwords. Headwords differing only in case are all kept.
+     */
+    public MatchEngine(Collection<String> headwords) {
+        TreeSet<String> sorted = new TreeSet<>(Comparator.comparing((String s) -> s.toLowerCase(Locale.ROOT))
+                .thenComparing(Comparator.naturalOrder()));
+        sorted.addAll(headwords);
+        this.headwords = sorted.toArray(new String[0]);
+        this.normalized = new String[this.headwords.length];
+        for (int i = 0; i < this.headwords.length; i++)
+            normalized[i] = this.headwords[i].toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the number of headwords.
+     */
+    public int size() {
+        return headwords.length;
+    }
+
+    /**
+     * Finds the headwords matching a word.
+     *
+     * @param word     The word or pattern to match.
+     * @param strategy The name of the strategy, one of STRATEGIES.
+     * @return The matching headwords, or null if the strategy is not supported. An invalid regular expression matches
+     * nothing.
+     */
+    public List<String> match(String word, String strategy) {
+        String key = word.toLowerCase(Locale.ROOT);
+        switch (strategy) {
+            case "exact":
+                return range(key, true);
+            case "prefix":
+                return range(key, false);
+            case "substring":
+                return substring(key);
+            case "suffix":
+                return suffix(key);
+            case "re":
+                return regex(word);
+            case "soundex":
+                return toHeadwords(soundexIndex().getOrDefault(soundex(key), NO_WORDS));
+            case "lev":
+                return levenshtein(key, 1);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Finds the headwords matching a word by checking every headword, without using any index. The result is the same
+     * as with match; this is the reference the indexes are compared against (in correctness and speed).
+     */
+    public List<String> matchByScan(String word, String strategy) {
+        String key = word.toLowerCase(Locale.ROOT);
+        switch (strategy) {
+            case "exact":
+                return scan(w -> w.equals(key));
+            case "prefix":
+                return scan(w -> w.startsWith(key));
+            case "substring":
+                return scan(w -> w.contains(key));
+            case "suffix":
+                return scan(w -> w.endsWith(key));
+            case "re":
+                Pattern pattern = compile(word);
+                return pattern == null ? Collections.emptyList() : scan(w -> pattern.matcher(w).find());
+            case "soundex":
+                String code = soundex(key);
+                return scan(w -> soundex(w).equals(code));
+            case "lev":
+                return scan(w -> distance(key, w, 1) <= 1);
+            default:
+                return null;
+        }
+    }
+
+    private List<String> range(String key, boolean exact) {
+        List<String> result = new ArrayList<>();
+        for (int i = lowerBound(normalized, key); i < normalized.length; i++) {
+            if (exact ? !normalized[i].equals(key) : !normalized[i].startsWith(key)) break;
+            result.add(headwords[i]);
+        }
+        return result;
+    }
+
+    private List<String> suffix(String key) {
+        buildSuffixIndex();
+        String reversedKey = new StringBuilder(key).reverse().toString();
+        int[] found = new int[8];
+        int n = 0;
+        for (int i = lowerBound(reversed, reversedKey); i < reversed.length && reversed[i].startsWith(reversedKey); i++) {
+            if (n == found.length) found = Arrays.copyOf(found, n * 2);
+            found[n++] = suffixOrder[i];
+        }
+        found = Arrays.copyOf(found, n);
+        Arrays.sort(found);
+        return toHeadwords(found);
+    }
+
+    private List<String> substring(String key) {
+        int[] candidates = candidates(key);
+        if (candidates == null)
+            return scan(w -> w.contains(key));
+        List<String> result = new ArrayList<>();
+        for (int i : candidates)
+            if (normalized[i].contains(key))
+                result.add(headwords[i]);
+        return result;
+    }
+
+    private List<String> regex(String expression) {
+        Pattern pattern = compile(expression);
+        if (pattern == null) return Collections.emptyList();
+
+        String literal = requiredLiteral(expression);
+        List<String> result = new ArrayList<>();
+        if (expression.startsWith("^") && literal != null && literal.equals(leadingLiteral(expression))) {
+            // Anchored: only headwords starting with the literal can match
+            String prefix = literal.toLowerCase(Locale.ROOT);
+            for (int i = lowerBound(normalized, prefix); i < normalized.length && normalized[i].startsWith(prefix); i++)
+                if (pattern.matcher(normalized[i]).find())
+                    result.add(headwords[i]);
+            return result;
+        }
+        int[] candidates = literal != null ? candidates(literal.toLowerCase(Locale.ROOT)) : null;
+        if (candidates == null)
+            return scan(w -> pattern.matcher(w).find());
+        for (int i : candidates)
+            if (pattern.matcher(normalized[i]).find())
+                result.add(headwords[i]);
+        return result;
+    }
+
+    private List<String> levenshtein(String key, int maxDistance) {
+        BkNode root = bkTree();
+        if (root == null) return Collections.emptyList();
+        int[] found = new int[8];
+        int n = 0;
+        Deque<BkNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            BkNode node = stack.pop();
+            // Without a limit, since the exact distance decides which children to visit
+            int d = distance(key, normalized[node.word], Integer.MAX_VALUE);
+            if (d <= maxDistance) {
+                if (n + 1 + node.sameWords.length > found.length)
+                    found = Arrays.copyOf(found, 2 * (n + 1 + node.sameWords.length));
+                found[n++] = node.word;
+                for (int same : node.sameWords)
+                    found[n++] = same;
+            }
+            for (int i = 0; i < node.distances.length; i++)
+                if (Math.abs(node.distances[i] - d) <= maxDistance)
+                    stack.push(node.children[i]);
+        }
+        found = Arrays.copyOf(found, n);
+        Arrays.sort(found);
+        return toHeadwords(found);
+    }
+
+    private interface WordPredicate {
+        boolean test(String normalizedWord);
+    }
+
+    private List<String> scan(WordPredicate predicate) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < normalized.length; i++) {
+            if (predicate.test(normalized[i]))
+                result.add(headwords[i]);
+        }
+        return result;
+    }
+
+    private List<String> toHeadwords(int[] words) {
+        List<String> result = new ArrayList<>(words.length);
+        for (int i : words)
+            result.add(headwords[i]);
+        return result;
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static Pattern compile(String expression) {
+        try {
+            return Pattern.compile(expression, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    // ---- Substring: trigram index ----
+
+    /**
+     * Returns the headwords (in order) containing every trigram of a key, or null if the key is too short to have
+     * trigrams.
+     */
+    private int[] candidates(String key) {
+        if (key.length() < 3) return null;
+        Map<Long, int[]> index = trigramIndex();
+        int[] result = null;
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            int[] postings = index.getOrDefault(trigram(key, i), NO_WORDS);
+            result = result == null ? postings : intersect(result, postings);
+            if (result.length == 0) break;
+        }
+        return result;
+    }
+
+    private Map<Long, int[]> trigramIndex() {
+        Map<Long, int[]> index = trigrams;
+        if (index != null) return index;
+        synchronized (this) {
+            if (trigrams != null) return trigrams;
+            Map<Long, int[]> postings = new HashMap<>();
+            Map<Long, Integer> sizes = new HashMap<>();
+            for (int w = 0; w < normalized.length; w++) {
+                String word = normalized[w];
+                for (int i = 0; i + 3 <= word.length(); i++) {
+                    long t = trigram(word, i);
+                    int[] list = postings.get(t);
+                    int size = sizes.getOrDefault(t, 0);
+                    // Words are visited in order, so a word repeating a trigram is already last in the list
+                    if (size > 0 && list[size - 1] == w) continue;
+                    if (list == null) list = new int[4];
+                    else if (size == list.length) list = Arrays.copyOf(list, size * 2);
+                    list[size] = w;
+                    postings.put(t, list);
+                    sizes.put(t, size + 1);
+                }
+            }
+            for (Map.Entry<Long, int[]> entry : postings.entrySet())
+                entry.setValue(Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+            return trigrams = postings;
+        }
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // ---- Suffix: sorted reversed headwords ----
+
+    private void buildSuffixIndex() {
+        if (reversed != null) return;
+        synchronized (this) {
+            if (reversed != null) return;
+            Integer[] order = new Integer[normalized.length];
+            String[] reversedWords = new String[normalized.length];
+            for (int i = 0; i < normalized.length; i++) {
+                order[i] = i;
+                reversedWords[i] = new StringBuilder(normalized[i]).reverse().toString();
+            }
+            Arrays.sort(order, Comparator.comparing(i -> reversedWords[i]));
+            int[] sortedOrder = new int[order.length];
+            String[] sortedWords = new String[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedOrder[i] = order[i];
+                sortedWords[i] = reversedWords[order[i]];
+            }
+            suffixOrder = sortedOrder;
+            reversed = sortedWords;
+        }
+    }
+
+    // ---- Soundex: map from code to headwords ----
+
+    private Map<String, int[]> soundexIndex() {
+        Map<String, int[]> index = soundexCodes;
+        if (index != null) return index;
+        synchronized (this) {
+            if (soundexCodes != null) return soundexCodes;
+            Map<String, List<Integer>> lists = new HashMap<>();
+            for (int i = 0; i < normalized.length; i++)
+                lists.computeIfAbsent(soundex(normalized[i]), k -> new ArrayList<>()).add(i);
+            Map<String, int[]> codes = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : lists.entrySet())
+                codes.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            return soundexCodes = codes;
+        }
+    }
+
+    /**
+     * Computes the American Soundex code of a word (a letter followed by three digits). Non-letters are ignored; a
+     * word without letters has an empty code.
+     */
+    static String soundex(String word) {
+        StringBuilder code = new StringBuilder(4);
+        char previous = 0;
+        for (int i = 0; i < word.length() && code.length() < 4; i++) {
+            char c = Character.toUpperCase(word.charAt(i));
+            if (c < 'A' || c > 'Z') continue;
+            char digit = "01230120022455012623010202".charAt(c - 'A');
+            if (code.length() == 0) {
+                code.append(c);
+            } else if (digit != '0' && digit != previous) {
+                code.append(digit);
+            }
+            // H and W don't separate letters with the same code, vowels do
+            if (c != 'H' && c != 'W') previous = digit;
+        }
+        if (code.length() == 0) return "";
+        while (code.length() < 4) code.append('0');
+        return code.toString();
+    }
+
+    // ---- Levenshtein: BK-tree ----
+
+    private static class BkNode {
+        private final int word;
+        private int[] sameWords = NO_WORDS;  // headwords differing from word in case only
+        private int[] distances = NO_WORDS;
+        private BkNode[] children = new BkNode[0];
+
+        private BkNode(int word) {
+            this.word = word;
+        }
+
+        private BkNode child(int distance) {
+            for (int i = 0; i < distances.length; i++)
+                if (distances[i] == distance) return children[i];
+            return null;
+        }
+
+        private void addChild(int distance, BkNode child) {
+            distances = Arrays.copyOf(distances, distances.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            distances[distances.length - 1] = distance;
+            children[children.length - 1] = child;
+        }
+    }
+
+    private BkNode bkTree() {
+        BkNode root = bkTree;
+        if (root != null || normalized.length == 0) return root;
+        synchronized (this) {
+            if (bkTree != null) return bkTree;
+            // Inserting in a shuffled order keeps the tree from degenerating on sorted input
+            List<Integer> order = new ArrayList<>(normalized.length);
+            for (int i = 0; i < normalized.length; i++) order.add(i);
+            Collections.shuffle(order, new Random(normalized.length));
+            root = new BkNode(order.get(0));
+            for (int k = 1; k < order.size(); k++) {
+                int w = order.get(k);
+                BkNode node = root;
+                while (true) {
+                    int d = distance(normalized[w], normalized[node.word], Integer.MAX_VALUE);
+                    if (d == 0) {
+                        node.sameWords = Arrays.copyOf(node.sameWords, node.sameWords.length + 1);
+                        node.sameWords[node.sameWords.length - 1] = w;
+                        break;
+                    }
+                    BkNode child = node.child(d);
+                    if (child == null) {
+                        node.addChild(d, new BkNode(w));
+                        break;
+                    }
+                    node = child;
+                }
+            }
+            return bkTree = root;
+        }
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings, stopping early once it is known to exceed a limit (in
+     * which case any value above the limit is returned).
+     */
+    static int distance(String a, String b, int limit) {
+        int la = a.length(), lb = b.length();
+        if (Math.abs(la - lb) > limit) return limit + 1;
+        int[] previous = new int[lb + 1];
+        int[] current = new int[lb + 1];
+        for (int j = 0; j <= lb; j++) previous[j] = j;
+        for (int i = 1; i <= la; i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= lb; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) return limit + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[lb];
+    }
+
+    // ---- Regular expressions: literal prefilter ----
+
+    /**
+     * Returns the longest run of literal characters that every match of an expression must contain, or null if none
+     * can be determined (e.g., the expression uses alternation). The analysis is conservative: anything it doesn't
+     * understand ends the current run.
+     */
+    static String requiredLiteral(String expression) {
+        String best = null;
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '|') return null;
+            char next = i + 1 < expression.length() ? expression.charAt(i + 1) : 0;
+            boolean optional = next == '?' || next == '*' || next == '{';
+            if (depth == 0 && !optional && isLiteral(c)) {
+                run.append(c);
+                // A quantifier that allows repetition keeps the character but ends the run after it
+                if (next != '+') continue;
+            } else if (c == '\\') {
+                // An escaped punctuation character is literal; escaped letters are classes (\d) or assertions (\b)
+                char after = i + 2 < expression.length() ? expression.charAt(i + 2) : 0;
+                i++;
+                if (depth == 0 && next != 0 && !Character.isLetterOrDigit(next) &&
+                        after != '?' && after != '*' && after != '{') {
+                    run.append(next);
+                    if (after != '+') continue;
+                }
+            } else if (c == '{') {
+                // The bounds of a quantifier (e.g., {2,5}) are not literal characters
+                int close = expression.indexOf('}', i);
+                if (close > 0) i = close;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if ((c == ')' || c == ']') && depth > 0) {
+                depth--;
+            }
+            if (best == null || run.length() > best.length()) best = run.toString();
+            run.setLength(0);
+        }
+        if (best == null || run.length() > best.length()) best = run.toString();
+        return best.isEmpty() ? null : best;
+    }
+
+    private static String leadingLiteral(String expression) {
+        String literal = requiredLiteral(expression.substring(1));
+        return literal != null && expression.substring(1).startsWith(literal) ? literal : null;
+    }
+
+    private static boolean isLiteral(char c) {
+        return Character.isLetterOrDigit(c) || c == ' ' || c == '-' || c == '\'' || c == '_';
+    }
+}
@@ -10,6 +10,7 @@ public class Definition {
     private String word;
     private String databaseName;
     private String definition;
+    private StringBuilder builder; // the definition while text is being appended to it, until it is read
 
     public Definition(String word, String database) {
         this.word = word;
@@ -25,25 +26,43 @@ public class Definition {
     }
 
     public String getDefinition() {
+        if (builder != null) {
+            definition = builder.toString();
+            builder = null;
+        }
         return definition;
     }
 
     public void setDefinition(String definition) {
+        this.builder = null;
         this.definition = definition.replaceAll("[ \t\r]*\n", "\n");
     }
 
+    /**
+     * Appends a line to the definition. Lines are collected in a StringBuilder until the definition is read, so
+     * building a definition line by line takes time proportional to its length.
+     */
     public void appendDefinition(String definition) {
-        if (this.definition == null)
+        if (this.definition == null && builder == null) {
             this.setDefinition(definition);
-        else if (definition != null)
-            this.setDefinition(this.definition + System.lineSeparator() + definition);
+        } else if (definition != null) {
+            if (builder == null)
+                builder = new StringBuilder(this.definition);
+            // Same result as cleaning the whole concatenated text, but only the appended text is scanned
+            int end = builder.length();
+            while (end > 0 && (builder.charAt(end - 1) == ' ' || builder.charAt(end - 1) == '\t' ||
+                    builder.charAt(end - 1) == '\r'))
+                end--;
+            builder.setLength(end);
+            builder.append('\n').append(definition.replaceAll("[ \t\r]*\n", "\n"));
+        }
     }
 
     @Override
     public String toString() {
         return "('" + word + '\'' +
                 "@'" + databaseName + '\'' +
-                ": '" + definition + "')";
+                ": '" + getDefinition() + "')";
     }
 
     @Override
@@ -51,13 +70,15 @@ public class Definition {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Definition that = (Definition) o;
+        String definition = getDefinition(), thatDefinition = that.getDefinition();
         return word.equals(that.word) && databaseName.equals(that.databaseName) &&
             Objects.equals(definition == null ? null : definition.trim(),
-                           that.definition == null ? null : that.definition.trim());
+                           thatDefinition == null ? null : thatDefinition.trim());
     }
 
     @Override
     public int hashCode() {
+        String definition = getDefinition();
         return Objects.hash(word, databaseName, definition == null ? null : definition.trim());
     }
 }
@@ -0,0 +1,340 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking connection with a DICT server. It provides the same operations as DictionaryConnection, but each
+ * returns a CompletableFuture instead of blocking, and all I/O is done by a DictEventLoop, so one thread can serve
+ * hundreds of connections. Commands may be issued from any thread and at any time: they are written back to back
+ * and their replies are matched in order, so several requests on the same connection are naturally pipelined.
+ * <p>
+ * Replies are read directly from a ByteBuffer and split into lines; once a reply is complete it is parsed by the same
+ * code used by DictionaryConnection. Futures are completed on the event loop thread, so callbacks attached to them
+ * should not block.
+ * <p>
+ * Each request must be answered within the reply timeout, counted from when it is queued; otherwise the connection
+ * fails with a DictTimeoutException, as its stream is left in the middle of a reply. The deadlines are enforced by the
+ * event loop.
+ */
+public class AsyncDictionaryConnection {
+
+    private static final int DEFAULT_PORT = 2628;
+
+    public static final long DEFAULT_REPLY_TIMEOUT_MILLIS = DictionaryConnection.DEFAULT_READ_TIMEOUT_MILLIS;
+
+    private interface ReplyReader<T> {
+        T read(BufferedReader in) throws DictConnectionException;
+    }
+
+    private static class PendingReply<T> {
+        private final ReplyReader<T> reader;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private long deadline = Long.MAX_VALUE; // in System.nanoTime terms, or Long.MAX_VALUE for none
+
+        private PendingReply(ReplyReader<T> reader) {
+            this.reader = reader;
+        }
+
+        private void complete(List<String> lines) {
+            try {
+                future.complete(reader.read(new LineListReader(lines)));
+            } catch (DictConnectionException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Presents the lines of a complete reply as a BufferedReader, without copying them.
+     */
+    private static class LineListReader extends BufferedReader {
+        private final Iterator<String> lines;
+
+        private LineListReader(List<String> lines) {
+            super(Reader.nullReader(), 1);
+            this.lines = lines.iterator();
+        }
+
+        @Override
+        public String readLine() {
+            return lines.hasNext() ? lines.next() : null;
+        }
+    }
+
+    private final DictEventLoop loop;
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private volatile long replyTimeoutMillis = DEFAULT_REPLY_TIMEOUT_MILLIS;
+
+    // The fields below are only used on the event loop thread
+    private final Deque<PendingReply<?>> pending = new ArrayDeque<>();
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(1 << 16);
+    private byte[] lineBytes = new byte[256];
+    private int lineLength;
+    private final List<String> replyLines = new ArrayList<>();
+    private boolean inText;
+    private DictConnectionException failure;
+
+    private AsyncDictionaryConnection(DictEventLoop loop, SocketChannel channel) {
+        this.loop = loop;
+        this.channel = channel;
+    }
+
+    /**
+     * Starts a new connection with a DICT server. The returned future completes once the welcome message is received.
+     *
+     * @param loop The event loop that will perform the I/O of this connection.
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @return A future completed with the connection, or failed with a DictConnectionException if the host does not
+     * exist, the connection can't be established, or the welcome message doesn't match its expected value.
+     */
+    public static CompletableFuture<AsyncDictionaryConnection> connect(DictEventLoop loop, String host, int port) {
+        CompletableFuture<AsyncDictionaryConnection> result = new CompletableFuture<>();
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            AsyncDictionaryConnection connection = new AsyncDictionaryConnection(loop, channel);
+            connection.submit(null, in -> {
+                Status stat = Status.readStatus(in);
+                if (stat.getStatusCode() != 220)
+                    throw new DictConnectionException(stat.getDetails());
+                return connection;
+            }).whenComplete((c, e) -> {
+                if (e != null) result.completeExceptionally(e);
+                else result.complete(c);
+            });
+            loop.execute(() -> {
+                try {
+                    connection.key = channel.register(loop.selector(), SelectionKey.OP_CONNECT, connection);
+                    if (channel.connect(new InetSocketAddress(host, port)))
+                        connection.connected();
+                } catch (IOException | RuntimeException e) {
+                    connection.fail(new DictConnectionException(e));
+                }
+            });
+        } catch (IOException | IllegalStateException e) {
+            result.completeExceptionally(new DictConnectionException(e));
+        }
+        return result;
+    }
+
+    /**
+     * Starts a new connection with a DICT server on the default DICT port.
+     */
+    public static CompletableFuture<AsyncDictionaryConnection> connect(DictEventLoop loop, String host) {
+        return connect(loop, host, DEFAULT_PORT);
+    }
+
+    /**
+     * Sets the time allowed for the reply of each request queued from now on, including the time spent waiting for
+     * the replies of earlier requests. Zero disables the timeout. The welcome message uses the default,
+     * DEFAULT_REPLY_TIMEOUT_MILLIS.
+     */
+    public void setReplyTimeout(long replyTimeoutMillis) {
+        this.replyTimeoutMillis = replyTimeoutMillis;
+    }
+
+    /**
+     * See DictionaryConnection.getDatabaseList.
+     */
+    public CompletableFuture<Map<String, Database>> getDatabaseList() {
+        return submit("SHOW DB", DictionaryConnection::readDatabaseList);
+    }
+
+    /**
+     * See DictionaryConnection.getStrategyList.
+     */
+    public CompletableFuture<Set<MatchingStrategy>> getStrategyList() {
+        return submit("SHOW STRAT", DictionaryConnection::readStrategyList);
+    }
+
+    /**
+     * See DictionaryConnection.getMatchList.
+     */
+    public CompletableFuture<Set<String>> getMatchList(String word, MatchingStrategy strategy, Database database) {
+        return submit(DictionaryConnection.matchCommand(word, strategy, database), DictionaryConnection::readMatchList);
+    }
+
+    /**
+     * See DictionaryConnection.getDefinitions.
+     */
+    public CompletableFuture<Collection<Definition>> getDefinitions(String word, Database database) {
+        return submit(DictionaryConnection.defineCommand(word, database), DictionaryConnection::readDefinitions);
+    }
+
+    /**
+     * See DictionaryConnection.getStatus.
+     */
+    public CompletableFuture<String> getStatus() {
+        return submit("STATUS", in -> {
+            Status stat = Status.readStatus(in);
+            if (stat.getStatusCode() != 210)
+                throw new DictConnectionException("Unexpected status reply: " + stat.getStatusCode());
+            return stat.getDetails();
+        });
+    }
+
+    /**
+     * Sends the QUIT message and closes the connection once its reply (and the replies of any earlier request) has
+     * been received. Errors are ignored.
+     */
+    public CompletableFuture<Void> close() {
+        CompletableFuture<Void> quit = submit("QUIT", in -> null);
+        return quit.handle((v, e) -> null).thenRun(() -> loop.execute(this::closeChannel));
+    }
+
+    private <T> CompletableFuture<T> submit(String command, ReplyReader<T> reader) {
+        PendingReply<T> reply = new PendingReply<>(reader);
+        ByteBuffer bytes = command == null ? null :
+                ByteBuffer.wrap((command + "\r\n").getBytes(StandardCharsets.UTF_8));
+        Runnable task = () -> {
+            if (failure != null) {
+                reply.future.completeExceptionally(failure);
+                return;
+            }
+            if (replyTimeoutMillis > 0)
+                reply.deadline = System.nanoTime() + replyTimeoutMillis * 1_000_000;
+            pending.add(reply);
+            if (bytes != null) {
+                writeQueue.add(bytes);
+                if (key != null && channel.isConnected())
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        };
+        try {
+            if (loop.inLoop()) task.run();
+            else loop.execute(task);
+        } catch (IllegalStateException e) {
+            reply.future.completeExceptionally(new DictConnectionException(e));
+        }
+        return reply.future;
+    }
+
+    void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) return;
+            if (key.isConnectable() && channel.finishConnect())
+                connected();
+            if (key.isValid() && key.isReadable())
+                read();
+            if (key.isValid() && key.isWritable())
+                write();
+        } catch (IOException e) {
+            fail(new DictConnectionException(e));
+        }
+    }
+
+    private void connected() {
+        key.interestOps(SelectionKey.OP_READ | (writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    private void read() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            fail(new DictConnectionException("Connection closed by server"));
+            return;
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                int length = lineLength > 0 && lineBytes[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lineLength = 0;
+                onLine(new String(lineBytes, 0, length, StandardCharsets.UTF_8));
+            } else {
+                if (lineLength == lineBytes.length)
+                    lineBytes = Arrays.copyOf(lineBytes, lineLength * 2);
+                lineBytes[lineLength++] = b;
+            }
+        }
+        readBuffer.clear();
+    }
+
+    /**
+     * Collects the lines of the current reply. A reply ends with the first status line that is not a preliminary (1yz)
+     * reply, as long as it is not inside a text block; 1yz replies other than 150 are followed by a text block
+     * terminated by ".".
+     */
+    private void onLine(String line) {
+        replyLines.add(line);
+        if (inText) {
+            if (line.equals(".")) inText = false;
+            return;
+        }
+        if (line.length() < 3 || line.charAt(0) < '1' || line.charAt(0) > '5') {
+            fail(new DictConnectionException("Status line expected: " + line));
+            return;
+        }
+        if (line.charAt(0) == '1') {
+            inText = !line.startsWith("150");
+            return;
+        }
+
+        PendingReply<?> reply = pending.poll();
+        List<String> lines = new ArrayList<>(replyLines);
+        replyLines.clear();
+        if (reply == null) {
+            fail(new DictConnectionException("Unexpected reply: " + line));
+            return;
+        }
+        reply.complete(lines);
+    }
+
+    private void write() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer buffer = writeQueue.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) return;
+            writeQueue.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Fails the connection if its oldest request is past its deadline. Replies arrive in order, so the later requests
+     * can't be answered before it anyway.
+     *
+     * @return The deadline of the oldest request, or Long.MAX_VALUE if there is none.
+     */
+    long checkDeadline(long now) {
+        PendingReply<?> reply = pending.peek();
+        if (reply == null || reply.deadline == Long.MAX_VALUE) return Long.MAX_VALUE;
+        if (now - reply.deadline < 0) return reply.deadline;
+        fail(new DictTimeoutException("No reply from server in time"));
+        return Long.MAX_VALUE;
+    }
+
+    void fail(DictConnectionException e) {
+        if (failure == null) failure = e;
+        PendingReply<?> reply;
+        while ((reply = pending.poll()) != null)
+            reply.future.completeExceptionally(e);
+        writeQueue.clear();
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing
+        }
+        if (failure == null) failure = new DictConnectionException("Connection closed");
+    }
+}
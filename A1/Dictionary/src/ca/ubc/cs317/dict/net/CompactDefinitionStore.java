@@ -0,0 +1,358 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A memory-efficient store of definitions. Instead of three Strings per definition (each with its own object header
+ * and UTF-16 array), a definition is kept as a single record in large shared byte arrays ("slabs"):
+ * <ul>
+ *     <li>the database name is interned, and the record only holds its number;</li>
+ *     <li>the word is stored in UTF-8;</li>
+ *     <li>the text is compressed with Deflate using a preset dictionary, trained on the first texts added, so that
+ *     even short definitions benefit from the vocabulary they share with the others.</li>
+ * </ul>
+ * Definition objects are only created when a definition is read with get, and are not retained by the store.
+ * Removed records leave holes in the slabs, which are reclaimed by copying the live records to new slabs once the
+ * holes take more space than the records.
+ * <p>
+ * A store is not thread-safe.
+ */
+public class CompactDefinitionStore {
+
+    private static final int SLAB_SIZE = 1 << 20;
+    // zlib processes the whole preset dictionary for every record; 4 KB gives most of the gain of a full 32 KB window
+    // at a fraction of the cost
+    private static final int DICTIONARY_SIZE = 4 << 10;
+    private static final int TRAINING_BYTES = 256 << 10;
+
+    // Record formats, stored in the flags byte
+    private static final int NO_TEXT = 0;
+    private static final int STORED = 1;
+    private static final int DEFLATED = 2;
+    private static final int DEFLATED_WITH_DICTIONARY = 3;
+
+    private final List<String> databaseNames = new ArrayList<>();
+    private final Map<String, Integer> databaseIds = new HashMap<>();
+
+    private List<byte[]> slabs = new ArrayList<>();
+    private int currentSlab;
+    private int slabPosition = SLAB_SIZE;  // no current slab yet
+    private long[] references = new long[1024];  // slab index << 32 | offset, or -1 if removed
+    private int[] lengths = new int[1024];
+    private int idCount;
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private long liveBytes;
+    private long deadBytes;
+
+    private byte[] dictionary;
+    private final List<String> trainingTexts = new ArrayList<>();
+    private int trainingSize;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[4096];
+
+    /**
+     * Creates an empty store that trains its compression dictionary on the first definitions added.
+     */
+    public CompactDefinitionStore() {
+    }
+
+    /**
+     * Creates an empty store with a given compression dictionary, for instance one obtained from trainDictionary on a
+     * representative sample.
+     */
+    public CompactDefinitionStore(byte[] dictionary) {
+        this.dictionary = dictionary.length > DICTIONARY_SIZE ?
+                Arrays.copyOfRange(dictionary, dictionary.length - DICTIONARY_SIZE, dictionary.length) : dictionary;
+    }
+
+    /**
+     * Builds a compression dictionary from sample texts: the words and lines that occur most often, weighted by their
+     * length, up to a few kilobytes. The most valuable strings are placed at the end of the dictionary, where
+     * Deflate can refer to them with the shortest distances.
+     */
+    public static byte[] trainDictionary(Collection<String> samples) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sample : samples) {
+            for (String line : sample.split("\n")) {
+                String trimmed = line.trim();
+                if (trimmed.length() > 8) counts.merge(trimmed, 1, Integer::sum);
+                for (String token : trimmed.split("\\s+"))
+                    if (token.length() > 3) counts.merge(token, 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(counts.entrySet());
+        ranked.removeIf(e -> e.getValue() < 2);
+        ranked.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(),
+                (long) a.getValue() * a.getKey().length()));
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : ranked) {
+            byte[] bytes = (entry.getKey() + " ").getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > DICTIONARY_SIZE) continue;
+            chosen.add(bytes);
+            size += bytes.length;
+        }
+        byte[] result = new byte[size];
+        int position = size;
+        for (byte[] bytes : chosen) {
+            position -= bytes.length;
+            System.arraycopy(bytes, 0, result, position, bytes.length);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a definition to the store.
+     *
+     * @return The id of the definition, used to retrieve or remove it. Ids of removed definitions are reused.
+     */
+    public int add(Definition definition) {
+        String text = definition.getDefinition();
+        if (dictionary == null && text != null) {
+            trainingTexts.add(text);
+            trainingSize += text.length();
+            if (trainingSize >= TRAINING_BYTES) {
+                dictionary = trainDictionary(trainingTexts);
+                trainingTexts.clear();
+            }
+        }
+
+        byte[] record = encode(definition);
+        int id = freeIds.isEmpty() ? idCount++ : freeIds.pop();
+        if (id >= references.length) {
+            references = Arrays.copyOf(references, references.length * 2);
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+        references[id] = append(record);
+        lengths[id] = record.length;
+        liveBytes += record.length;
+        return id;
+    }
+
+    /**
+     * Creates a Definition object for a stored definition.
+     *
+     * @throws NoSuchElementException If the id doesn't belong to a stored definition.
+     */
+    public Definition get(int id) {
+        if (id < 0 || id >= idCount || references[id] < 0)
+            throw new NoSuchElementException("No definition with id " + id);
+        byte[] slab = slabs.get((int) (references[id] >>> 32));
+        return decode(slab, (int) references[id]);
+    }
+
+    /**
+     * Returns a list that creates the Definition objects of a number of ids when its elements are accessed. The list
+     * is only valid as long as the definitions are in the store.
+     */
+    public List<Definition> view(int[] ids) {
+        return new AbstractList<Definition>() {
+            @Override
+            public Definition get(int index) {
+                return CompactDefinitionStore.this.get(ids[index]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    /**
+     * Removes a definition from the store.
+     */
+    public void remove(int id) {
+        if (id < 0 || id >= idCount || references[id] < 0) return;
+        references[id] = -1;
+        liveBytes -= lengths[id];
+        deadBytes += lengths[id];
+        freeIds.push(id);
+        if (deadBytes > SLAB_SIZE && deadBytes > liveBytes)
+            compact();
+    }
+
+    /**
+     * Removes all definitions. The compression dictionary is kept.
+     */
+    public void clear() {
+        slabs = new ArrayList<>();
+        slabPosition = SLAB_SIZE;
+        idCount = 0;
+        freeIds.clear();
+        liveBytes = deadBytes = 0;
+    }
+
+    /**
+     * Returns the number of definitions in the store.
+     */
+    public int size() {
+        return idCount - freeIds.size();
+    }
+
+    /**
+     * Returns the size of the records of all definitions in the store, in bytes.
+     */
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Returns the memory used by the store: the allocated slabs and the id tables.
+     */
+    public long getAllocatedBytes() {
+        long total = 12L * references.length;
+        for (byte[] slab : slabs) total += slab.length;
+        return total;
+    }
+
+    private long append(byte[] record) {
+        if (record.length > SLAB_SIZE) {
+            // A record larger than a slab gets a slab of its own; the current slab stays current
+            slabs.add(record.clone());
+            return (long) (slabs.size() - 1) << 32;
+        }
+        if (slabPosition + record.length > SLAB_SIZE) {
+            slabs.add(new byte[SLAB_SIZE]);
+            currentSlab = slabs.size() - 1;
+            slabPosition = 0;
+        }
+        System.arraycopy(record, 0, slabs.get(currentSlab), slabPosition, record.length);
+        long reference = (long) currentSlab << 32 | slabPosition;
+        slabPosition += record.length;
+        return reference;
+    }
+
+    private void compact() {
+        List<byte[]> oldSlabs = slabs;
+        slabs = new ArrayList<>();
+        slabPosition = SLAB_SIZE;
+        for (int id = 0; id < idCount; id++) {
+            if (references[id] < 0) continue;
+            byte[] slab = oldSlabs.get((int) (references[id] >>> 32));
+            int offset = (int) references[id];
+            references[id] = append(Arrays.copyOfRange(slab, offset, offset + lengths[id]));
+        }
+        deadBytes = 0;
+    }
+
+    // Record: database id, word length, word, flags, [text length, payload length, payload]
+
+    private byte[] encode(Definition definition) {
+        byte[] word = Objects.requireNonNullElse(definition.getWord(), "").getBytes(StandardCharsets.UTF_8);
+        String text = definition.getDefinition();
+
+        int flags = NO_TEXT;
+        byte[] payload = null;
+        int payloadLength = 0;
+        int textLength = 0;
+        if (text != null) {
+            byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+            textLength = raw.length;
+            deflater.reset();
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(raw);
+            deflater.finish();
+            if (buffer.length < raw.length + 64) buffer = new byte[raw.length + 64];
+            int compressed = deflater.deflate(buffer);
+            if (deflater.finished() && compressed < raw.length) {
+                flags = dictionary != null ? DEFLATED_WITH_DICTIONARY : DEFLATED;
+                payload = buffer;
+                payloadLength = compressed;
+            } else {
+                flags = STORED;
+                payload = raw;
+                payloadLength = raw.length;
+            }
+        }
+
+        byte[] record = new byte[5 * 4 + word.length + 1 + payloadLength];
+        int position = putVarint(record, 0, databaseId(definition.getDatabaseName()));
+        position = putVarint(record, position, word.length);
+        System.arraycopy(word, 0, record, position, word.length);
+        position += word.length;
+        record[position++] = (byte) flags;
+        if (flags != NO_TEXT) {
+            position = putVarint(record, position, textLength);
+            position = putVarint(record, position, payloadLength);
+            System.arraycopy(payload, 0, record, position, payloadLength);
+            position += payloadLength;
+        }
+        return Arrays.copyOf(record, position);
+    }
+
+    private Definition decode(byte[] slab, int offset) {
+        int[] position = {offset};
+        String database = databaseNames.get(getVarint(slab, position));
+        int wordLength = getVarint(slab, position);
+        String word = new String(slab, position[0], wordLength, StandardCharsets.UTF_8);
+        position[0] += wordLength;
+        int flags = slab[position[0]++];
+
+        Definition definition = new Definition(word, database);
+        if (flags == NO_TEXT)
+            return definition;
+        int textLength = getVarint(slab, position);
+        int payloadLength = getVarint(slab, position);
+        String text;
+        if (flags == STORED) {
+            text = new String(slab, position[0], payloadLength, StandardCharsets.UTF_8);
+        } else {
+            byte[] raw = new byte[textLength];
+            try {
+                inflater.reset();
+                inflater.setInput(slab, position[0], payloadLength);
+                int n = inflater.inflate(raw);
+                if (n == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(dictionary);
+                    n = inflater.inflate(raw);
+                }
+                if (n != textLength)
+                    throw new IllegalStateException("Corrupt definition record");
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt definition record", e);
+            }
+            text = new String(raw, StandardCharsets.UTF_8);
+        }
+        // The text was cleaned when the definition was created, and cleaning it again leaves it unchanged
+        definition.setDefinition(text);
+        return definition;
+    }
+
+    private int databaseId(String name) {
+        Integer id = databaseIds.get(name);
+        if (id == null) {
+            id = databaseNames.size();
+            databaseNames.add(name);
+            databaseIds.put(name, id);
+        }
+        return id;
+    }
+
+    private static int putVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private static int getVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.*;
+
+/**
+ * An in-memory cache of DEFINE results, keyed by the normalized word and the database name. Entries are evicted in
+ * least-recently-used order once the estimated size of all cached definitions exceeds a limit, and expire after a
+ * fixed time to live. Empty results (552 "no match" replies) are also cached, usually with a shorter time to live.
+ * <p>
+ * A compressed cache keeps its definitions in a CompactDefinitionStore instead of as Definition objects, which lets
+ * several times more definitions fit in the same memory, at the cost of decompressing them on every hit.
+ */
+public class DefinitionCache {
+
+    /**
+     * Source of definitions used when a lookup is not in the cache, such as DictionaryConnection::getDefinitions or
+     * DictionaryConnectionPool::getDefinitions.
+     */
+    public interface Loader {
+        Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException;
+    }
+
+    // Rough per-object overhead used when estimating the size of an entry
+    private static final int OBJECT_OVERHEAD = 64;
+
+    private static class Key {
+        private final String word;
+        private final String database;
+
+        private Key(String word, String database) {
+            this.word = word;
+            this.database = database;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return word.equals(key.word) && database.equals(key.database);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * word.hashCode() + database.hashCode();
+        }
+    }
+
+    private static class Entry {
+        private final Collection<Definition> definitions;  // null if compressed
+        private final int[] ids;                           // ids in the store, if compressed
+        private final long size;
+        private final long expiresAt;
+
+        private Entry(Collection<Definition> definitions, int[] ids, long size, long expiresAt) {
+            this.definitions = definitions;
+            this.ids = ids;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final CompactDefinitionStore store;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxBytes          Maximum estimated size, in bytes, of all cached definitions.
+     * @param ttlMillis         Time to live of entries with at least one definition.
+     * @param negativeTtlMillis Time to live of entries for words with no definitions.
+     */
+    public DefinitionCache(long maxBytes, long ttlMillis, long negativeTtlMillis) {
+        this(maxBytes, ttlMillis, negativeTtlMillis, false);
+    }
+
+    /**
+     * Creates an empty cache, optionally compressed.
+     *
+     * @param maxBytes          Maximum size, in bytes, of all cached definitions (estimated in memory, or the size of
+     *                          the compressed records).
+     * @param ttlMillis         Time to live of entries with at least one definition.
+     * @param negativeTtlMillis Time to live of entries for words with no definitions.
+     * @param compressed        Whether definitions are kept in a CompactDefinitionStore.
+     */
+    public DefinitionCache(long maxBytes, long ttlMillis, long negativeTtlMillis, boolean compressed) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.store = compressed ? new CompactDefinitionStore() : null;
+    }
+
+    /**
+     * Returns the definitions of a word, from the cache if available and not expired, or from the loader otherwise.
+     * Results obtained from the loader are added to the cache.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition.
+     * @param loader   The source of definitions for words not in the cache.
+     * @return An unmodifiable collection of definitions, possibly empty.
+     * @throws DictConnectionException If the loader fails. Failures are not cached.
+     */
+    public Collection<Definition> getDefinitions(String word, Database database, Loader loader) throws DictConnectionException {
+        Collection<Definition> cached = getIfPresent(word, database);
+        if (cached != null)
+            return cached;
+        Collection<Definition> definitions = loader.getDefinitions(word, database);
+        return put(word, database, definitions);
+    }
+
+    /**
+     * Returns the cached definitions of a word, or null if they are not cached (or expired). Counts as a hit or miss.
+     */
+    public synchronized Collection<Definition> getIfPresent(String word, Database database) {
+        Key key = key(word, database);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        if (entry.ids != null)
+            return Collections.unmodifiableList(new ArrayList<>(store.view(entry.ids)));
+        return entry.definitions;
+    }
+
+    /**
+     * Adds the definitions of a word to the cache, replacing any previous entry.
+     *
+     * @return The unmodifiable collection stored in the cache.
+     */
+    public synchronized Collection<Definition> put(String word, Database database, Collection<Definition> definitions) {
+        Collection<Definition> stored = Collections.unmodifiableList(new ArrayList<>(definitions));
+        Key key = key(word, database);
+        remove(key);
+
+        Entry entry;
+        long ttl = stored.isEmpty() ? negativeTtlMillis : ttlMillis;
+        if (store != null) {
+            long before = store.getLiveBytes();
+            int[] ids = new int[stored.size()];
+            int i = 0;
+            for (Definition definition : stored)
+                ids[i++] = store.add(definition);
+            entry = new Entry(null, ids, OBJECT_OVERHEAD + store.getLiveBytes() - before,
+                    System.currentTimeMillis() + ttl);
+        } else {
+            entry = new Entry(stored, null, estimateSize(word, database, stored), System.currentTimeMillis() + ttl);
+        }
+        if (entry.size > maxBytes) {
+            release(entry);
+            return stored;
+        }
+
+        entries.put(key, entry);
+        currentBytes += entry.size;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Entry evicted = it.next();
+            currentBytes -= evicted.size;
+            release(evicted);
+            it.remove();
+            evictions++;
+        }
+        return stored;
+    }
+
+    /**
+     * Removes all entries from the cache. Counters are not reset.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        if (store != null)
+            store.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DefinitionCache{entries=" + entries.size() + ", bytes=" + currentBytes + ", hits=" + hits +
+                ", misses=" + misses + ", evictions=" + evictions + "}";
+    }
+
+    private void remove(Key key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            currentBytes -= old.size;
+            release(old);
+        }
+    }
+
+    private void release(Entry entry) {
+        if (entry.ids != null)
+            for (int id : entry.ids)
+                store.remove(id);
+    }
+
+    private static Key key(String word, Database database) {
+        return new Key(word.trim().toLowerCase(Locale.ROOT), database.getName());
+    }
+
+    private static long estimateSize(String word, Database database, Collection<Definition> definitions) {
+        long size = OBJECT_OVERHEAD + 2L * (word.length() + database.getName().length());
+        for (Definition definition : definitions) {
+            size += OBJECT_OVERHEAD + 2L * (length(definition.getWord()) + length(definition.getDatabaseName()) +
+                    length(definition.getDefinition()));
+        }
+        return size;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
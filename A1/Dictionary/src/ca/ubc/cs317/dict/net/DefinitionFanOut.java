@@ -0,0 +1,186 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Looks up a word in several databases at the same time, with one DEFINE per database sent over separate pooled
+ * connections, instead of a single DEFINE on "*" that the server answers one database after the other. Results are
+ * merged in the order the databases were given, regardless of which one answered first.
+ */
+public class DefinitionFanOut {
+
+    /**
+     * The outcome of a fan-out lookup.
+     */
+    public static class Result {
+        private final List<Definition> definitions;
+        private final Map<Database, Long> latencyNanos;
+        private final Set<Database> timedOut;
+        private final Map<Database, DictConnectionException> failures;
+
+        private Result(List<Definition> definitions, Map<Database, Long> latencyNanos, Set<Database> timedOut,
+                       Map<Database, DictConnectionException> failures) {
+            this.definitions = definitions;
+            this.latencyNanos = latencyNanos;
+            this.timedOut = timedOut;
+            this.failures = failures;
+        }
+
+        /**
+         * Returns the definitions of all databases that answered in time, grouped by database in the order the
+         * databases were requested.
+         */
+        public List<Definition> getDefinitions() {
+            return definitions;
+        }
+
+        /**
+         * Returns the time each database that answered took to do so, in nanoseconds, in request order.
+         */
+        public Map<Database, Long> getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * Returns the databases that did not answer within their timeout, or were not needed because enough databases
+         * had already answered.
+         */
+        public Set<Database> getTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * Returns the databases whose lookup failed, with the corresponding exception.
+         */
+        public Map<Database, DictConnectionException> getFailures() {
+            return failures;
+        }
+    }
+
+    private final DictionaryConnectionPool pool;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a fan-out helper.
+     *
+     * @param pool     The pool providing the connections; its maximum size limits how many databases are queried at
+     *                 the same time.
+     * @param executor The executor running the individual lookups (each one blocks a thread while it waits).
+     */
+    public DefinitionFanOut(DictionaryConnectionPool pool, ExecutorService executor) {
+        this.pool = pool;
+        this.executor = executor;
+    }
+
+    /**
+     * Looks up a word in every given database and waits for all of them, up to the timeout.
+     *
+     * @see #getDefinitions(String, List, int, long)
+     */
+    public Result getDefinitions(String word, List<Database> databases, long timeoutMillis) throws DictConnectionException {
+        return getDefinitions(word, databases, databases.size(), timeoutMillis);
+    }
+
+    /**
+     * Looks up a word in several databases in parallel, with the same timeout for all of them.
+     *
+     * @see #getDefinitions(String, Map, int)
+     */
+    public Result getDefinitions(String word, List<Database> databases, int firstN, long timeoutMillis)
+            throws DictConnectionException {
+        Map<Database, Long> timeouts = new LinkedHashMap<>();
+        for (Database database : databases)
+            timeouts.put(database, timeoutMillis);
+        return getDefinitions(word, timeouts, firstN);
+    }
+
+    /**
+     * Looks up a word in several databases in parallel.
+     *
+     * @param word           The word whose definition is to be retrieved.
+     * @param timeoutsMillis The databases to query, in the order their results are merged, each with how long to wait
+     *                       for it, counted from the start of the call. Special databases ("*" and "!") are allowed
+     *                       but usually pointless.
+     * @param firstN         Return as soon as this many databases have answered (successfully, with or without
+     *                       definitions); the remaining ones are reported as timed out.
+     * @return The merged result.
+     * @throws DictConnectionException If the calling thread is interrupted while waiting.
+     */
+    public Result getDefinitions(String word, Map<Database, Long> timeoutsMillis, int firstN)
+            throws DictConnectionException {
+        long start = System.nanoTime();
+        CompletionService<Database> completion = new ExecutorCompletionService<>(executor);
+        Map<Database, Future<Database>> futures = new LinkedHashMap<>();
+        Map<Database, Collection<Definition>> answers = new ConcurrentHashMap<>();
+        Map<Database, Long> latencies = new ConcurrentHashMap<>();
+        Map<Database, Long> finishedAt = new ConcurrentHashMap<>();
+        Map<Database, Long> deadlines = new HashMap<>();
+        long lastDeadline = start;
+
+        for (Map.Entry<Database, Long> entry : timeoutsMillis.entrySet()) {
+            Database database = entry.getKey();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(entry.getValue());
+            deadlines.put(database, deadline);
+            lastDeadline = Math.max(lastDeadline, deadline);
+            futures.put(database, completion.submit(() -> {
+                long begin = System.nanoTime();
+                answers.put(database, pool.getDefinitions(word, database));
+                long end = System.nanoTime();
+                latencies.put(database, end - begin);
+                finishedAt.put(database, end);
+                return database;
+            }));
+        }
+
+        Map<Database, DictConnectionException> failures = new LinkedHashMap<>();
+        Set<Database> accepted = new HashSet<>();
+        try {
+            for (int i = 0; i < futures.size() && accepted.size() < firstN; i++) {
+                long remaining = lastDeadline - System.nanoTime();
+                Future<Database> done = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (done == null) break;
+                try {
+                    Database database = done.get();
+                    // An answer after the database's own deadline counts as a timeout
+                    if (finishedAt.get(database) <= deadlines.get(database))
+                        accepted.add(database);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures.put(databaseOf(futures, done), cause instanceof DictConnectionException ?
+                            (DictConnectionException) cause : new DictConnectionException(cause));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException(e);
+        } finally {
+            // Lookups still running keep their pooled connection until the reply is read, but their result is dropped
+            for (Future<Database> future : futures.values())
+                future.cancel(false);
+        }
+
+        // Only the databases accepted above are used, so a late answer can't change the result after the fact
+        List<Definition> definitions = new ArrayList<>();
+        Map<Database, Long> latencyNanos = new LinkedHashMap<>();
+        Set<Database> timedOut = new LinkedHashSet<>();
+        for (Database database : futures.keySet()) {
+            if (accepted.contains(database)) {
+                definitions.addAll(answers.get(database));
+                latencyNanos.put(database, latencies.get(database));
+            } else if (!failures.containsKey(database)) {
+                timedOut.add(database);
+            }
+        }
+        return new Result(definitions, latencyNanos, timedOut, failures);
+    }
+
+    private static Database databaseOf(Map<Database, Future<Database>> futures, Future<Database> future) {
+        for (Map.Entry<Database, Future<Database>> entry : futures.entrySet())
+            if (entry.getValue() == future) return entry.getKey();
+        throw new IllegalStateException("Unknown future");
+    }
+}
@@ -0,0 +1,17 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * Thrown when the connection to a DICT server was lost before a reply was complete (the server closed it, e.g., after
+ * an idle timeout, or it was reset), or a connection could not be established at all. The command may not have been
+ * processed, and can be sent again on a new connection if it has no side effects.
+ */
+public class DictConnectionLostException extends DictConnectionException {
+
+    public DictConnectionLostException(String message) {
+        super(message);
+    }
+
+    public DictConnectionLostException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
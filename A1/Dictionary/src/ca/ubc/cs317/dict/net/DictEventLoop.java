@@ -0,0 +1,155 @@
+package ca.ubc.cs317.dict.net;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread that multiplexes any number of AsyncDictionaryConnection objects with a Selector. All socket I/O and
+ * all changes to the connections' internal state happen on this thread; other threads hand work to it with execute.
+ * The loop also enforces the reply deadlines of its connections (see AsyncDictionaryConnection.setReplyTimeout).
+ * <p>
+ * An exception thrown by a task is reported and ignored; one thrown while handling a connection's I/O fails that
+ * connection only. Either way the loop goes on serving the other connections.
+ */
+public class DictEventLoop implements AutoCloseable {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true; // only set to false while holding tasks, see execute
+
+    /**
+     * Creates and starts an event loop.
+     *
+     * @throws IOException If the selector can't be opened.
+     */
+    public DictEventLoop() throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this::run, "dict-event-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the number of connections currently registered with this loop.
+     */
+    public int getConnectionCount() {
+        return selector.isOpen() ? selector.keys().size() : 0;
+    }
+
+    /**
+     * Stops the loop and closes all its connections. Pending requests fail with a DictConnectionException.
+     */
+    @Override
+    public void close() {
+        synchronized (tasks) {
+            running = false;
+        }
+        selector.wakeup();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs a task on the loop thread.
+     *
+     * @throws IllegalStateException If the loop is closed, in which case the task will never run.
+     */
+    void execute(Runnable task) {
+        // Checked and added under the same lock that stops the loop, so a task is either rejected or run by the loop
+        synchronized (tasks) {
+            if (!running) throw new IllegalStateException("Event loop is closed");
+            tasks.add(task);
+        }
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            long deadline = Long.MAX_VALUE;
+            while (running) {
+                if (deadline == Long.MAX_VALUE) {
+                    selector.select();
+                } else {
+                    long millis = (deadline - System.nanoTime() + 999_999) / 1_000_000;
+                    if (millis > 0) selector.select(millis);
+                    else selector.selectNow();
+                }
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    AsyncDictionaryConnection connection = (AsyncDictionaryConnection) key.attachment();
+                    try {
+                        connection.handle(key);
+                    } catch (RuntimeException e) {
+                        connection.fail(new DictConnectionException(e));
+                    }
+                }
+                deadline = checkDeadlines();
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            // No task can be added once running is false, so the tasks run here are the last ones
+            synchronized (tasks) {
+                running = false;
+            }
+            runTasks();
+            DictConnectionException closed = new DictConnectionException("Event loop closed");
+            for (SelectionKey key : selector.keys())
+                ((AsyncDictionaryConnection) key.attachment()).fail(closed);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Fails the connections whose oldest request is past its deadline.
+     *
+     * @return The earliest deadline left, in System.nanoTime terms, or Long.MAX_VALUE if there is none.
+     */
+    private long checkDeadlines() {
+        long now = System.nanoTime();
+        long earliest = Long.MAX_VALUE;
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid()) continue;
+            long deadline = ((AsyncDictionaryConnection) key.attachment()).checkDeadline(now);
+            if (deadline != Long.MAX_VALUE && (earliest == Long.MAX_VALUE || deadline - earliest < 0))
+                earliest = deadline;
+        }
+        return earliest;
+    }
+}
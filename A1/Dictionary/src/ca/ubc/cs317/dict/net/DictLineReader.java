@@ -0,0 +1,162 @@
+package ca.ubc.cs317.dict.net;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A BufferedReader for DICT replies that keeps track of what it reads: the number of lines, their size in bytes as
+ * sent by the server (UTF-8, including the CRLF terminator), and the code of the last status line parsed by Status.
+ * The counters are plain fields updated by the reading thread, so they cost a few instructions per line.
+ * <p>
+ * When created over a socket, the reader also enforces the deadlines of the reply being read (see startReply): before
+ * each line, the socket timeout is lowered to the time left, so a stalled server can't block a reader past its
+ * deadline. Deadlines are checked per line, so a single line trickling in very slowly may overshoot them by up to
+ * one read timeout.
+ */
+public class DictLineReader extends BufferedReader {
+
+    private long lineCount;
+    private long byteCount;
+    private int lastStatusCode;
+    private int replyStatusCode;
+    private long replyStartLine;
+    private boolean reachedEnd;
+
+    private final Socket socket;
+    private final int readTimeoutMillis;
+    private int currentTimeoutMillis;
+    private long firstLineDeadline; // System.nanoTime, 0 if none
+    private long deadline;
+
+    public DictLineReader(Reader in) {
+        this(in, null, 0);
+    }
+
+    /**
+     * Creates a reader for a socket whose timeout (SO_TIMEOUT) is readTimeoutMillis, or 0 for no timeout.
+     */
+    public DictLineReader(Reader in, Socket socket, int readTimeoutMillis) {
+        super(in);
+        this.socket = socket;
+        this.readTimeoutMillis = this.currentTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (firstLineDeadline != 0 || deadline != 0)
+            applyDeadline();
+        String line = super.readLine();
+        firstLineDeadline = 0;
+        if (line == null) {
+            reachedEnd = true;
+        } else {
+            lineCount++;
+            byteCount += utf8Length(line) + 2;
+        }
+        return line;
+    }
+
+    /**
+     * Returns the number of lines read since the reader was created.
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the number of bytes in the lines read since the reader was created.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the code of the last status line read, or 0 if none was read.
+     */
+    public int getLastStatusCode() {
+        return lastStatusCode;
+    }
+
+    /**
+     * Returns true once the end of the stream was reached, i.e., the server closed the connection.
+     */
+    boolean reachedEnd() {
+        return reachedEnd;
+    }
+
+    /**
+     * Returns the number of lines read since startReply.
+     */
+    long getReplyLineCount() {
+        return lineCount - replyStartLine;
+    }
+
+    /**
+     * Returns the code of the last status line read since startReply, or 0 if none was read.
+     */
+    int getReplyStatusCode() {
+        return replyStatusCode;
+    }
+
+    void statusRead(int statusCode) {
+        lastStatusCode = replyStatusCode = statusCode;
+    }
+
+    /**
+     * Sets the deadlines of the reply about to be read, starting now: the first line must arrive within
+     * firstLineMillis, and the whole reply within totalMillis. Zero means no deadline. Has no effect without a socket.
+     */
+    void startReply(long firstLineMillis, long totalMillis) {
+        replyStatusCode = 0;
+        replyStartLine = lineCount;
+        if (socket == null) return;
+        long now = System.nanoTime();
+        firstLineDeadline = firstLineMillis > 0 ? now + firstLineMillis * 1_000_000 : 0;
+        deadline = totalMillis > 0 ? now + totalMillis * 1_000_000 : 0;
+    }
+
+    /**
+     * Clears the deadlines set by startReply, restoring the socket's read timeout.
+     */
+    void endReply() {
+        firstLineDeadline = deadline = 0;
+        try {
+            setTimeout(readTimeoutMillis);
+        } catch (IOException e) {
+            // the socket is closed, so the next read fails anyway
+        }
+    }
+
+    private void applyDeadline() throws IOException {
+        long now = System.nanoTime();
+        long remaining = Long.MAX_VALUE;
+        if (firstLineDeadline != 0) remaining = firstLineDeadline - now;
+        if (deadline != 0) remaining = Math.min(remaining, deadline - now);
+        if (remaining <= 0)
+            throw new SocketTimeoutException("Reply deadline exceeded");
+        long timeout = (remaining + 999_999) / 1_000_000;
+        if (readTimeoutMillis > 0) timeout = Math.min(timeout, readTimeoutMillis);
+        setTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+    }
+
+    private void setTimeout(int timeoutMillis) throws IOException {
+        if (socket == null || timeoutMillis == currentTimeoutMillis) return;
+        socket.setSoTimeout(timeoutMillis);
+        currentTimeoutMillis = timeoutMillis;
+    }
+
+    private static int utf8Length(String line) {
+        int length = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                // Surrogate pairs are 4 bytes, i.e., 2 extra for each of the 2 chars
+                length += c < 0x800 ? 1 : Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,147 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * A single-pass tokenizer for DICT response lines. It splits a line into atoms the same way as
+ * DictStringParser.splitAtoms (whitespace separated, with spaces allowed inside double quotes), but without regular
+ * expressions or intermediate arrays: the atoms are visited one at a time, and a String is only created when the
+ * caller asks for one. A tokenizer may be reset and reused for any number of lines.
+ * <p>
+ * Typical use:
+ * <pre>
+ *     DictLineTokenizer tokens = new DictLineTokenizer();
+ *     tokens.reset(line);
+ *     while (tokens.next()) { ... tokens.atom() ... }
+ * </pre>
+ */
+public class DictLineTokenizer {
+
+    private CharSequence line = "";
+    private int position;
+    private int start;
+    private int end;
+
+    /**
+     * Starts tokenizing a new line. The line is not copied, so it must not be changed while it is tokenized.
+     *
+     * @return This tokenizer.
+     */
+    public DictLineTokenizer reset(CharSequence line) {
+        this.line = line;
+        this.position = 0;
+        this.start = this.end = 0;
+        return this;
+    }
+
+    /**
+     * Advances to the next atom in the line.
+     *
+     * @return true if an atom was found, false if the end of the line was reached.
+     */
+    public boolean next() {
+        int length = line.length();
+        int i = position;
+        while (i < length && isSpace(line.charAt(i)))
+            i++;
+        if (i == length) {
+            position = length;
+            return false;
+        }
+
+        if (line.charAt(i) == '"') {
+            for (int j = i + 1; j < length; j++) {
+                if (line.charAt(j) == '"') {
+                    start = i + 1;
+                    end = j;
+                    position = j + 1;
+                    return true;
+                }
+            }
+            // An unbalanced quote is just part of an unquoted atom
+        }
+
+        int j = i;
+        while (j < length && !isSpace(line.charAt(j)))
+            j++;
+        start = i;
+        end = j;
+        position = j;
+        return true;
+    }
+
+    /**
+     * Skips a number of atoms.
+     *
+     * @return true if all atoms were skipped, false if the end of the line was reached first.
+     */
+    public boolean skip(int count) {
+        for (int i = 0; i < count; i++) {
+            if (!next()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current atom as a String. Only valid after a call to next that returned true.
+     */
+    public String atom() {
+        return line.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns the position in the line where the current atom starts (after the opening quote, if quoted).
+     */
+    public int atomStart() {
+        return start;
+    }
+
+    /**
+     * Returns the position in the line right after the current atom (before the closing quote, if quoted).
+     */
+    public int atomEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the rest of the line after the current atom, without leading spaces.
+     */
+    public String rest() {
+        int i = position;
+        while (i < line.length() && isSpace(line.charAt(i)))
+            i++;
+        return line.subSequence(i, line.length()).toString();
+    }
+
+    /**
+     * Checks if the current atom is equal to a String, without creating a String for the atom.
+     */
+    public boolean atomEquals(String value) {
+        if (value.length() != end - start) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (line.charAt(start + i) != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses the current atom as a non-negative decimal integer, without creating a String for the atom.
+     *
+     * @throws NumberFormatException If the atom is not a valid number.
+     */
+    public int atomAsInt() {
+        if (start == end)
+            throw new NumberFormatException("Empty atom");
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10)
+                throw new NumberFormatException("Invalid number: " + atom());
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Same set of characters as \s in java.util.regex
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,17 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * Thrown when a DICT server does not reply in time: the connection could not be established within the connect
+ * timeout, or a reply missed its first-byte, read or total deadline. The connection it happened on is left in the
+ * middle of a reply and can't be used anymore.
+ */
+public class DictTimeoutException extends DictConnectionException {
+
+    public DictTimeoutException(String message) {
+        super(message);
+    }
+
+    public DictTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
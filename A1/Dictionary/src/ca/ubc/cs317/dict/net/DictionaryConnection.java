@@ -4,28 +4,51 @@ import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
 
-import javax.xml.crypto.Data;
-
-import static ca.ubc.cs317.dict.net.Status.readStatus;
-
-
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.*;
+import java.util.function.Consumer;
 
 
-public class DictionaryConnection {
-    
+public class DictionaryConnection implements DictionaryService {
+
     private static final int DEFAULT_PORT = 2628;
 
+    /**
+     * Default time allowed to establish a connection and, separately, for each read from the server.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+
+    private static volatile DictionaryMetrics defaultMetrics;
+
     public Socket socket;
     public BufferedReader in;
-    public PrintWriter out; 
+    public PrintWriter out;
+
+    private final String host;
+    private final int port;
+    private final DictLineReader reader;
+    private final DictionaryMetrics metrics;
+    private final long openedAt;
+    private long commandCount;
+    private boolean closed;
+    private volatile long firstByteTimeoutMillis;
+    private volatile long totalTimeoutMillis;
+    private volatile boolean broken;
+    private volatile boolean aborted;
+
+    /**
+     * Reads one complete reply; see the static reply readers below.
+     */
+    interface ReplyReader<T> {
+        T read(BufferedReader in) throws DictConnectionException;
+    }
 
     /**
      * Establishes a new connection with a DICT server using an explicit host and port number, and handles initial
-     * welcome messages.
+     * welcome messages. The connection uses the default connect and read timeouts.
      *
      * @param host Name of the host where the DICT server is running
      * @param port Port number used by the DICT server
@@ -33,20 +56,64 @@ public class DictionaryConnection {
      *                                 don't match their expected value.
      */
     public DictionaryConnection(String host, int port) throws DictConnectionException {
+        this(host, port, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Establishes a new connection with a DICT server using an explicit host and port number and explicit timeouts,
+     * and handles initial welcome messages.
+     *
+     * @param host                 Name of the host where the DICT server is running
+     * @param port                 Port number used by the DICT server
+     * @param connectTimeoutMillis Time allowed to establish the TCP connection, or 0 to wait indefinitely
+     * @param readTimeoutMillis    Time allowed for each read from the server (including the welcome message), or 0
+     *                             to wait indefinitely
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     *                                 don't match their expected value. A DictTimeoutException if the server did not
+     *                                 accept the connection or send its welcome message in time.
+     */
+    public DictionaryConnection(String host, int port, int connectTimeoutMillis, int readTimeoutMillis)
+            throws DictConnectionException {
+        this.host = host;
+        this.port = port;
+        this.metrics = defaultMetrics;
+        long start = System.nanoTime();
         Status stat;
         try {
-            socket = new Socket(host, port); // create a connection between the host and port of the server
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            socket = new Socket(); // create a connection between the host and port of the server
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+            reader = new DictLineReader(new InputStreamReader(socket.getInputStream()), socket, readTimeoutMillis);
+            in = reader;
+            out = new PrintWriter(socket.getOutputStream(), true);
             stat = Status.readStatus(in);
             // checks if status code is valid, if not throw DictConnectionException
             if ((stat.getStatusCode() != 220)) {
-                throw new DictConnectionException(stat.getDetails());
+                throw new DictConnectionException("Unexpected welcome message from " + host + ":" + port + ": " +
+                        stat.getStatusCode() + " " + stat.getDetails());
             }
 //            System.out.println("connection has been established");
 
         } catch (Exception e) { // if host/port invalid, throw DictConnExcep
-            throw new DictConnectionException();
+            DictConnectionException failure = isTimeout(e) ?
+                    new DictTimeoutException("Timed out connecting to " + host + ":" + port, e) :
+                    e instanceof DictConnectionException ? (DictConnectionException) e :
+                    e instanceof IOException ?
+                    new DictConnectionLostException("Unable to connect to " + host + ":" + port, e) :
+                    new DictConnectionException("Unable to connect to " + host + ":" + port, e);
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (metrics != null)
+                metrics.connectionFailed(host, port, failure);
+            throw failure;
         }
+        openedAt = System.nanoTime();
+        if (metrics != null)
+            metrics.connectionOpened(host, port, openedAt - start);
     }
 
 
@@ -60,40 +127,82 @@ public class DictionaryConnection {
      */
     public DictionaryConnection(String host) throws DictConnectionException, IOException {
         this(host, DEFAULT_PORT);
-        Status stat;
+    }
+
+    /**
+     * Sends the final QUIT message and closes the connection with the server. This function ignores any exception that
+     * may happen while sending the message, receiving its reply, or closing the connection. A broken connection (see
+     * isBroken) is closed without sending QUIT.
+     */
+    public synchronized void close() {
+
+        // sends 'quit' command to server, and closes socket; ending connection between two.
         try {
-            socket = new Socket(host, DEFAULT_PORT); // create a connection between the host and port of the server
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            stat = Status.readStatus(in);
-            // checks if status code is valid, if not throw DictConnectionException
-            if ((stat.getStatusCode() != 220)) {
-                throw new DictConnectionException(stat.getDetails());
+            if (!broken) {
+                out.println("quit");
+                in.readLine(); // the 221 reply
             }
-
-        } catch (Exception e) { // if host/port invalid, throw DictConnExcep
-            throw new DictConnectionException();
+        } catch (Exception e) {
+            // ignores any/all exceptions happening when sending message
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignored, as above
         }
+        if (metrics != null && !closed)
+            metrics.connectionClosed(host, port, System.nanoTime() - openedAt, commandCount);
+        closed = true;
+    }
 
+    /**
+     * Sets the metrics listener used by connections created from now on, or null to create connections without
+     * metrics (the default). Existing connections are not affected.
+     */
+    public static void setDefaultMetrics(DictionaryMetrics metrics) {
+        defaultMetrics = metrics;
+    }
 
+    /**
+     * Returns the metrics listener of this connection, or null if it has none.
+     */
+    public DictionaryMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * Sends the final QUIT message and closes the connection with the server. This function ignores any exception that
-     * may happen while sending the message, receiving its reply, or closing the connection.
+     * Sets the deadlines applied to each reply from now on: the first line of the reply must arrive within
+     * firstByteTimeoutMillis of the command being sent, and the whole reply within totalTimeoutMillis. Zero disables
+     * a deadline (the default); the read timeout given when the connection was created still applies to each read.
+     * A command that misses a deadline fails with a DictTimeoutException and leaves the connection broken.
+     * <p>
+     * This method does not wait for a command in progress, which keeps the deadlines it started with.
      */
-    public synchronized void close() {
+    public void setTimeouts(long firstByteTimeoutMillis, long totalTimeoutMillis) {
+        this.firstByteTimeoutMillis = firstByteTimeoutMillis;
+        this.totalTimeoutMillis = totalTimeoutMillis;
+    }
 
-        // sends 'quit' command to server, and closes socket; ending connection between two.
+    /**
+     * Cancels the command in progress, if any, from another thread: the socket is closed, so a thread blocked reading a
+     * reply fails immediately with a DictConnectionException. The connection is broken afterwards. Unlike close, this
+     * method does not wait for the command in progress or talk to the server.
+     */
+    public void abort() {
+        aborted = broken = true;
         try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            out.println("quit");
-            String closeMessage = in.readLine();
-            System.out.println(closeMessage);
             socket.close();
-        } catch (Exception e) {
-            // ignores any/all exceptions happening when sending message
+        } catch (IOException e) {
+            // ignored, the socket is unusable either way
         }
+    }
 
+    /**
+     * Returns true if a command failed in a way that leaves the stream out of sync with the server (a timeout, an I/O
+     * error, an invalid or incomplete reply, or abort). A broken connection rejects new commands and should be closed.
+     */
+    public boolean isBroken() {
+        return broken;
     }
 
 
@@ -107,39 +216,7 @@ public class DictionaryConnection {
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Map<String, Database> getDatabaseList() throws DictConnectionException {
-        Map<String, Database> databaseMap = new HashMap<>();
-        
-        try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            out.println("SHOW DB");
-            Status stat;
-            try {  
-                stat = Status.readStatus(in); 
-                // Check status code, depending on what code we get, return set/throw exception
-                if (stat.getStatusCode() != 110) {  
-                    if (stat.getStatusCode() == 554) { // if code is 554, returns empty map
-                        return databaseMap;
-                    }
-                    throw new DictConnectionException(); // throw exception if code isn't 554 or 110
-                } 
-                String[] dbList = DictStringParser.splitAtoms(stat.getDetails());
-                int numOfdbs = Integer.parseInt(dbList[0]); 
-                int i = 0;
-
-                while (i < numOfdbs) { // separate in.readline() into categories for database
-                    String[] line = DictStringParser.splitAtoms(in.readLine());
-                    Database db = new Database(line[0], line[1]);
-                    databaseMap.put(line[0],db); // add to DBmap, which'll be returned
-                    i++;
-                }
-
-            }
-            catch (Exception e) {throw new DictConnectionException();}
-                in.readLine();
-
-        }
-        catch(Exception e) {throw new DictConnectionException();}
-        return databaseMap;
+        return execute("SHOW DB", "SHOW DB", DictionaryConnection::readDatabaseList);
     }
 
 
@@ -151,39 +228,7 @@ public class DictionaryConnection {
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     public synchronized Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
-        Set<MatchingStrategy> set = new LinkedHashSet<>();
-        
-        try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            out.println("SHOW STRAT");
-            Status stat;
-            try {
-                stat = Status.readStatus(in);
-                if (stat.getStatusCode() != 111){
-                    if (stat.getStatusCode() == 555){
-                        return set;
-                    }
-                    throw new DictConnectionException();
-                } 
-                String[] stratList = DictStringParser.splitAtoms(stat.getDetails());
-                int numOfStrats = Integer.parseInt(stratList[0]);
-                int i = 0;
-
-                while (i < numOfStrats) {
-                    String[] line = DictStringParser.splitAtoms(in.readLine());
-                    MatchingStrategy strategy = new MatchingStrategy(line[0], line[1]);
-                    set.add(strategy);
-                    i++;
-                }
-            }
-            catch (Exception ignored) {}
-
-            in.readLine();
-
-        }
-        catch (Exception e) {throw new DictConnectionException();}
-
-        return set;
+        return execute("SHOW STRAT", "SHOW STRAT", DictionaryConnection::readStrategyList);
     }
 
 
@@ -200,50 +245,7 @@ public class DictionaryConnection {
      *                                 value, or the database or strategy are invalid.
      */
     public synchronized Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
-        Set<String> set = new LinkedHashSet<>();
-
-        String msg = "MATCH " + database.getName() + " " + strategy.getName() + " " + "\"" + word + "\"";
-
-        // check if input has 2 words
-        if (word.contains(" ")&& !(word.startsWith("\"")) && (word.endsWith("\""))){
-            msg += ('"' + word + '"');
-        }
-        try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            out.println(msg);
-            Status stat;  
-
-            try {
-                stat = Status.readStatus(in);
-                if (stat.getStatusCode() != 152)
-                {
-                    if (stat.getStatusCode() == 552){ // if no words found
-                        return set;
-                    } 
-                    else { throw new DictConnectionException(); } // if not 152 or 552 throw new exception
-
-                }
-
-                
-                String[] matchList = DictStringParser.splitAtoms(stat.getDetails());
-                int numOfMatches = Integer.parseInt(matchList[0]);
-                int i = 0;
-
-                while (i < numOfMatches) { // separate in.readline() into categories for set
-                    String[] line = DictStringParser.splitAtoms(in.readLine());
-                    set.add(line[1]);
-                    i++;
-                }
-
-            }
-            catch (Exception e) {throw new DictConnectionException();}
-
-            in.readLine();
-
-        }
-        catch (Exception e) {throw new DictConnectionException();}
-
-        return set;
+        return execute("MATCH", matchCommand(word, strategy, database), DictionaryConnection::readMatchList);
     }
 
 
@@ -260,51 +262,280 @@ public class DictionaryConnection {
      * value, or the database is invalid.
      */
     public synchronized Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
-        Collection<Definition> set = new ArrayList<>();
-        String msg = "DEFINE " + database.getName() + " "  + "\"" + word + "\"";
+        return execute("DEFINE", defineCommand(word, database), DictionaryConnection::readDefinitions);
+    }
 
-        // check if input has 2 words
-        if (word.contains(" ")&& !(word.startsWith("\"")) && (word.endsWith("\""))){
-            msg += ('"' + word + '"');
+    /**
+     * Requests all definitions for a specific word, delivering each definition to a consumer as soon as it is read,
+     * instead of waiting for the whole reply. The consumer is called on the calling thread.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition (see getDefinitions(String, Database)).
+     * @param consumer Receives each definition, in the order returned by the server.
+     * @return The number of definitions delivered, zero if no definitions were returned.
+     * @throws DictConnectionException If the connection was interrupted, the messages don't match their expected
+     *                                 value, or the database is invalid.
+     */
+    public synchronized int getDefinitions(String word, Database database, Consumer<Definition> consumer) throws DictConnectionException {
+        return execute("DEFINE", defineCommand(word, database), in -> readDefinitions(in, consumer));
+    }
+
+    /**
+     * Sends a STATUS command to the server. This is a cheap command that can be used to check if the connection is
+     * still usable.
+     *
+     * @return The status details returned by the server.
+     * @throws DictConnectionException If the connection was interrupted or the reply doesn't match its expected value.
+     */
+    public synchronized String getStatus() throws DictConnectionException {
+        return execute("STATUS", "STATUS", in -> {
+            Status stat = Status.readStatus(in);
+            if (stat.getStatusCode() != 210)
+                throw new DictConnectionException("Unexpected status reply: " + stat.getStatusCode());
+            return stat.getDetails();
+        });
+    }
+
+    /**
+     * Sends a command and reads its reply, reporting the outcome to the metrics listener, if any.
+     */
+    private <T> T execute(String name, String command, ReplyReader<T> replyReader) throws DictConnectionException {
+        if (broken)
+            throw new DictConnectionLostException("Connection to " + host + ":" + port + " is broken");
+        long sentAt = metrics != null ? System.nanoTime() : 0;
+        out.println(command);
+        return readReply(name, sentAt, replyReader);
+    }
+
+    /**
+     * Reads the reply of a command sent at a given time (in System.nanoTime units, only used for metrics), reporting
+     * its outcome to the metrics listener, if any. Also used by DictionaryPipeline, which sends commands in advance;
+     * the reply deadlines start when reading starts.
+     */
+    <T> T readReply(String name, long sentAt, ReplyReader<T> replyReader) throws DictConnectionException {
+        commandCount++;
+        long lines = reader.getLineCount();
+        long bytes = reader.getByteCount();
+        reader.startReply(firstByteTimeoutMillis, totalTimeoutMillis);
+        try {
+            T reply = replyReader.read(in);
+            if (metrics != null)
+                metrics.commandCompleted(name, reader.getLastStatusCode(), System.nanoTime() - sentAt,
+                        reader.getLineCount() - lines, reader.getByteCount() - bytes);
+            return reply;
+        } catch (DictConnectionException | RuntimeException e) {
+            // A RuntimeException comes from a consumer of the reply (see getDefinitions), and is rethrown as is
+            DictConnectionException failure = failed(name, e);
+            if (metrics != null)
+                metrics.commandFailed(name, reader.getReplyStatusCode(), System.nanoTime() - sentAt, failure);
+            if (e instanceof RuntimeException)
+                throw (RuntimeException) e;
+            throw failure;
+        } finally {
+            reader.endReply();
         }
+    }
+
+    /**
+     * Classifies a failed command. Only a reply made of a single negative status line (e.g., "550 invalid database")
+     * leaves the connection usable. Any other failure (I/O errors and timeouts, the server closing the connection, an
+     * invalid or unexpected line, or an exception thrown while the reply was being consumed) leaves the stream in an
+     * unknown position, so the connection is marked broken and its socket closed; the stream is never resynchronized by
+     * skipping the rest of a reply of unknown length.
+     */
+    private DictConnectionException failed(String name, Exception e) {
+        if (aborted)
+            return new DictConnectionException(name + " cancelled", e);
+        int statusCode = reader.getReplyStatusCode();
+        boolean negativeReply = statusCode >= 400 && reader.getReplyLineCount() == 1;
+        if (negativeReply && e instanceof DictConnectionException && !(e.getCause() instanceof IOException))
+            return (DictConnectionException) e;
+        broken = true;
         try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            out.println(msg);
-            Status stat;
-
-            try {
-                String dbName = database.getName();
-                stat = Status.readStatus(in);
-                if (stat.getStatusCode() != 150){
-                    if (stat.getStatusCode() == 552){
-                        return set;
-                    }
-                    throw new DictConnectionException();
-                }
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        if (isTimeout(e))
+            return new DictTimeoutException(name + " timed out waiting for " + host + ":" + port, e);
+        if (reader.reachedEnd() || e.getCause() instanceof IOException)
+            return new DictConnectionLostException("Connection to " + host + ":" + port + " lost during " + name, e);
+        if (e instanceof DictConnectionException)
+            return (DictConnectionException) e;
+        return new DictConnectionException(name + " failed: " + e, e);
+    }
 
-                String[] defList = DictStringParser.splitAtoms(stat.getDetails());
-                int numOfDefs = Integer.parseInt(defList[0]);
-                int i = 0;
-
-                while (i < numOfDefs) {
-                    if (readStatus(in).getStatusCode() != 151) {
-                        throw new DictConnectionException();
-                    }
-                    String[] line = DictStringParser.splitAtoms(in.readLine());
-                    Definition def = new Definition(line[0], line[1]);
-                    def.appendDefinition(in.readLine());
-                    set.add(def);
-                    i++;
-                }
+    private static boolean isTimeout(Throwable e) {
+        for (; e != null; e = e.getCause())
+            if (e instanceof InterruptedIOException)
+                return true;
+        return false;
+    }
+
+    /**
+     * Builds the MATCH command line for a word, strategy and database.
+     */
+    static String matchCommand(String word, MatchingStrategy strategy, Database database) {
+        return "MATCH " + database.getName() + " " + strategy.getName() + " " + "\"" + word + "\"";
+    }
+
+    /**
+     * Builds the DEFINE command line for a word and database.
+     */
+    static String defineCommand(String word, Database database) {
+        return "DEFINE " + database.getName() + " " + "\"" + word + "\"";
+    }
+
+    /*
+     * The methods below read one complete reply (status line, text lines, terminating "." and the final 250 status)
+     * from the server. They always consume the whole reply, so that several commands may be written before their
+     * replies are read (see DictionaryPipeline).
+     */
+
+    static Map<String, Database> readDatabaseList(BufferedReader in) throws DictConnectionException {
+        Map<String, Database> databaseMap = new HashMap<>();
+        Status stat = Status.readStatus(in);
+        // Check status code, depending on what code we get, return set/throw exception
+        if (stat.getStatusCode() != 110) {
+            if (stat.getStatusCode() == 554) { // if code is 554, returns empty map
+                return databaseMap;
             }
-            catch (Exception e) {throw new DictConnectionException();}
+            throw unexpected(stat); // throw exception if code isn't 554 or 110
+        }
+        DictLineTokenizer tokens = new DictLineTokenizer();
+        String line;
+        while ((line = readTextLine(in)) != null) { // separate each line into categories for database
+            String name = nextAtom(tokens.reset(line), "Invalid database line");
+            databaseMap.put(name, new Database(name, nextAtom(tokens, "Invalid database line"))); // add to DBmap, which'll be returned
+        }
+        readCompletion(in);
+        return databaseMap;
+    }
 
-            in.readLine();
+    static Set<MatchingStrategy> readStrategyList(BufferedReader in) throws DictConnectionException {
+        Set<MatchingStrategy> set = new LinkedHashSet<>();
+        Status stat = Status.readStatus(in);
+        if (stat.getStatusCode() != 111) {
+            if (stat.getStatusCode() == 555) {
+                return set;
+            }
+            throw unexpected(stat);
+        }
+        DictLineTokenizer tokens = new DictLineTokenizer();
+        String line;
+        while ((line = readTextLine(in)) != null) {
+            String name = nextAtom(tokens.reset(line), "Invalid strategy line");
+            set.add(new MatchingStrategy(name, nextAtom(tokens, "Invalid strategy line")));
+        }
+        readCompletion(in);
+        return set;
+    }
 
+    static Set<String> readMatchList(BufferedReader in) throws DictConnectionException {
+        Set<String> set = new LinkedHashSet<>();
+        Status stat = Status.readStatus(in);
+        if (stat.getStatusCode() != 152) {
+            if (stat.getStatusCode() == 552) { // if no words found
+                return set;
+            }
+            throw unexpected(stat); // if not 152 or 552 throw new exception
         }
-        catch (Exception e) {throw new DictConnectionException();}
+        DictLineTokenizer tokens = new DictLineTokenizer();
+        String line;
+        while ((line = readTextLine(in)) != null) { // each line is: database "word"
+            if (!tokens.reset(line).skip(1))
+                throw new DictConnectionException("Invalid match line");
+            set.add(nextAtom(tokens, "Invalid match line"));
+        }
+        readCompletion(in);
+        return set;
+    }
 
+    static Collection<Definition> readDefinitions(BufferedReader in) throws DictConnectionException {
+        Collection<Definition> set = new ArrayList<>();
+        readDefinitions(in, set::add);
         return set;
     }
 
+    static int readDefinitions(BufferedReader in, Consumer<Definition> consumer) throws DictConnectionException {
+        Status stat = Status.readStatus(in);
+        if (stat.getStatusCode() != 150) {
+            if (stat.getStatusCode() == 552) {
+                return 0;
+            }
+            throw unexpected(stat);
+        }
+        DictLineTokenizer tokens = new DictLineTokenizer();
+        int numOfDefs;
+        try {
+            if (!tokens.reset(stat.getDetails()).next())
+                throw new DictConnectionException("Invalid definition count");
+            numOfDefs = tokens.atomAsInt();
+        } catch (NumberFormatException e) {
+            throw new DictConnectionException("Invalid definition count", e);
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < numOfDefs; i++) {
+            stat = Status.readStatus(in);
+            if (stat.getStatusCode() != 151) {
+                throw unexpected(stat);
+            }
+            // 151 "word" database "database description"
+            tokens.reset(stat.getDetails());
+            String defWord = nextAtom(tokens, "Invalid definition header");
+            Definition def = new Definition(defWord, nextAtom(tokens, "Invalid definition header"));
+            text.setLength(0);
+            String line;
+            while ((line = readTextLine(in)) != null) {
+                if (text.length() > 0)
+                    text.append(System.lineSeparator());
+                text.append(line);
+            }
+            def.setDefinition(text.toString());
+            consumer.accept(def);
+        }
+        readCompletion(in);
+        return numOfDefs;
+    }
+
+    /**
+     * Builds the exception for an unexpected status, keeping the server's reply (e.g., "550 invalid database").
+     */
+    private static DictConnectionException unexpected(Status stat) {
+        return new DictConnectionException("Unexpected reply: " + stat.getStatusCode() + " " + stat.getDetails());
+    }
+
+    private static String nextAtom(DictLineTokenizer tokens, String error) throws DictConnectionException {
+        if (!tokens.next())
+            throw new DictConnectionException(error);
+        return tokens.atom();
+    }
+
+    /**
+     * Reads one line of a textual response, undoing the dot-stuffing used by the protocol.
+     *
+     * @return The line read, or null if the terminating "." line was reached.
+     */
+    private static String readTextLine(BufferedReader in) throws DictConnectionException {
+        String line;
+        try {
+            line = in.readLine();
+        } catch (IOException e) {
+            throw new DictConnectionException(e);
+        }
+        if (line == null)
+            throw new DictConnectionException("Connection closed in the middle of a response");
+        if (line.equals("."))
+            return null;
+        if (line.startsWith(".."))
+            return line.substring(1);
+        return line;
+    }
+
+    private static void readCompletion(BufferedReader in) throws DictConnectionException {
+        Status stat = Status.readStatus(in);
+        if (stat.getStatusCode() != 250)
+            throw new DictConnectionException("Expected 250 ok, received " + stat.getStatusCode());
+    }
+
 }
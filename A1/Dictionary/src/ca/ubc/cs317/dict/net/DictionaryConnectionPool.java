@@ -0,0 +1,715 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A bounded pool of connections to a single DICT server (host and port). Each DictionaryConnection serves one request
+ * at a time, so the pool allows several threads to issue lookups in parallel, each on its own connection.
+ * <p>
+ * Connections idle for longer than the idle timeout are closed (as long as the pool keeps at least its minimum size),
+ * connections older than the maximum lifetime are replaced, and connections that have been idle for a while are
+ * validated with a STATUS command before being handed out.
+ * <p>
+ * Calls can be given deadlines (see setTimeouts), and the read-only lookups can be hedged: if a reply takes longer
+ * than the hedge delay (by default, the 95th percentile of recent calls), the same command is sent on a second
+ * connection, the first reply wins and the other call is aborted. This trades a few percent of extra requests for a
+ * tail latency that doesn't depend on a single slow connection or server thread.
+ * <p>
+ * Servers drop idle clients, so idle connections are kept alive with a periodic STATUS command, and lookups that fail
+ * because their connection was lost are replayed on a new connection (see executeWithRetry), reconnecting with
+ * exponential backoff while the server is unreachable.
+ */
+public class DictionaryConnectionPool implements DictionaryService {
+
+    private static final int DEFAULT_PORT = 2628;
+
+    // Calls measured before the adaptive hedge delay (the 95th percentile) is trusted
+    private static final long MIN_HEDGE_SAMPLES = 100;
+
+    /**
+     * A unit of work to be executed with a connection borrowed from the pool.
+     */
+    public interface PooledCall<T> {
+        T call(DictionaryConnection connection) throws DictConnectionException;
+    }
+
+    private static class Entry {
+        private final DictionaryConnection connection;
+        private final long createdAt;
+        private long lastUsed;
+        private long lastChecked; // last use or keep-alive
+
+        private Entry(DictionaryConnection connection) {
+            this.connection = connection;
+            this.createdAt = this.lastUsed = this.lastChecked = System.currentTimeMillis();
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private long validationIntervalMillis = 5000;
+    private long borrowTimeoutMillis = 30000;
+    private volatile int connectTimeoutMillis = DictionaryConnection.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = DictionaryConnection.DEFAULT_READ_TIMEOUT_MILLIS;
+    private volatile long firstByteTimeoutMillis;
+    private volatile long totalTimeoutMillis;
+    private volatile long hedgeDelayMillis = -1;
+    private volatile long keepAliveIntervalMillis = 120_000;
+    private volatile int maxRetries = 3;
+    private volatile long retryBackoffMillis = 100;
+    private volatile long maxRetryBackoffMillis = 5000;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong hedgedCalls = new AtomicLong();
+    private final AtomicLong retriedCalls = new AtomicLong();
+    private ExecutorService hedgeExecutor;
+
+    private final Deque<Entry> idle = new ArrayDeque<>();
+    private final Map<DictionaryConnection, Entry> inUse = new IdentityHashMap<>();
+    private int total; // idle + in use + being created
+    private boolean closed;
+
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Creates a pool for a DICT server and opens its minimum number of connections.
+     *
+     * @param host              Name of the host where the DICT server is running
+     * @param port              Port number used by the DICT server
+     * @param minSize           Number of connections kept open even when idle
+     * @param maxSize           Maximum number of connections open at the same time
+     * @param idleTimeoutMillis Time after which an idle connection above the minimum size is closed
+     * @param maxLifetimeMillis Time after which a connection is closed and replaced, regardless of use
+     * @throws DictConnectionException If the initial connections can't be established.
+     */
+    public DictionaryConnectionPool(String host, int port, int minSize, int maxSize, long idleTimeoutMillis,
+                                    long maxLifetimeMillis) throws DictConnectionException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid pool size: " + minSize + ".." + maxSize);
+        this.host = host;
+        this.port = port;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+
+        for (int i = 0; i < minSize; i++) {
+            try {
+                idle.push(new Entry(new DictionaryConnection(host, port, connectTimeoutMillis, readTimeoutMillis)));
+                total++;
+            } catch (DictConnectionException e) {
+                close();
+                throw e;
+            }
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dict-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, maxLifetimeMillis) / 2);
+        evictor.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a pool for a DICT server with default sizes (1 to 8 connections), a one minute idle timeout and a thirty
+     * minute maximum lifetime.
+     */
+    public DictionaryConnectionPool(String host, int port) throws DictConnectionException {
+        this(host, port, 1, 8, 60_000, 30 * 60_000);
+    }
+
+    /**
+     * Creates a pool for a DICT server on the default DICT port, with default sizes and timeouts.
+     */
+    public DictionaryConnectionPool(String host) throws DictConnectionException {
+        this(host, DEFAULT_PORT);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sets how long a connection may stay idle before it is validated with STATUS when borrowed.
+     */
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    /**
+     * Sets how long borrow waits for a connection when the pool is exhausted.
+     */
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Sets the connect and read timeouts of the connections opened from now on (see the DictionaryConnection
+     * constructor).
+     */
+    public void setConnectionTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Sets the first-byte and total deadlines of every call made with a borrowed connection (see
+     * DictionaryConnection.setTimeouts). Zero disables a deadline.
+     */
+    public void setTimeouts(long firstByteTimeoutMillis, long totalTimeoutMillis) {
+        this.firstByteTimeoutMillis = firstByteTimeoutMillis;
+        this.totalTimeoutMillis = totalTimeoutMillis;
+    }
+
+    /**
+     * Sets when hedged calls (see executeHedged) send a second request: a positive value is a fixed delay, zero uses
+     * the 95th percentile of the latency of calls made through this pool (once enough calls were measured), and a
+     * negative value disables hedging (the default).
+     */
+    public void setHedgeDelayMillis(long hedgeDelayMillis) {
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    /**
+     * Sets how long a connection may stay idle before a STATUS command is sent on it to keep the server from dropping
+     * it, or 0 to disable keep-alives. Keep-alives are sent from the maintenance thread, which runs at most every
+     * half of the idle timeout or maximum lifetime (and at least every second), so intervals shorter than that are
+     * rounded up.
+     */
+    public void setKeepAliveIntervalMillis(long keepAliveIntervalMillis) {
+        this.keepAliveIntervalMillis = keepAliveIntervalMillis;
+    }
+
+    /**
+     * Sets how many times executeWithRetry replays a call that failed because its connection was lost, and the
+     * backoff between reconnection attempts: the first replay is immediate, the following ones wait for an
+     * exponentially increasing (and randomized) delay, starting at initialBackoffMillis and capped at maxBackoffMillis.
+     */
+    public void setRetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = initialBackoffMillis;
+        this.maxRetryBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Returns the number of times a call was replayed after its connection was lost.
+     */
+    public long getRetriedCallCount() {
+        return retriedCalls.get();
+    }
+
+    /**
+     * Returns the latency of the successful calls made through execute and executeHedged, in nanoseconds.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+
+    /**
+     * Returns the number of calls for which a second request was sent.
+     */
+    public long getHedgedCallCount() {
+        return hedgedCalls.get();
+    }
+
+    /**
+     * Takes a connection from the pool, opening a new one if no idle connection is available and the pool is not at
+     * its maximum size. Idle connections that are broken or past their lifetime are discarded instead of lent. The
+     * connection must be returned with release (or invalidate, if it failed).
+     *
+     * @return A connection for exclusive use of the caller.
+     * @throws DictConnectionException If the pool is closed, no connection became available in time, or a new
+     *                                 connection could not be established.
+     */
+    public DictionaryConnection borrow() throws DictConnectionException {
+        long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+        while (true) {
+            Entry entry = null;
+            boolean create = false;
+            synchronized (this) {
+                while (true) {
+                    if (closed)
+                        throw new DictConnectionException("Connection pool is closed");
+                    if (!idle.isEmpty()) {
+                        entry = idle.pop();
+                        inUse.put(entry.connection, entry);
+                        break;
+                    }
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        throw new DictConnectionException("Timed out waiting for a connection to " + host + ":" + port);
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new DictConnectionException(e);
+                    }
+                }
+            }
+
+            if (create)
+                return prepare(open());
+
+            long now = System.currentTimeMillis();
+            if (entry.connection.isBroken() || now - entry.createdAt > maxLifetimeMillis) {
+                invalidate(entry.connection);
+                continue;
+            }
+            if (now - entry.lastChecked > validationIntervalMillis) {
+                try {
+                    entry.connection.getStatus();
+                } catch (DictConnectionException e) {
+                    invalidate(entry.connection);
+                    continue;
+                }
+            }
+            return prepare(entry.connection);
+        }
+    }
+
+    private DictionaryConnection prepare(DictionaryConnection connection) {
+        connection.setTimeouts(firstByteTimeoutMillis, totalTimeoutMillis);
+        return connection;
+    }
+
+    /**
+     * Returns a healthy connection to the pool, so it can be reused by other callers. A broken connection is
+     * invalidated instead.
+     */
+    public void release(DictionaryConnection connection) {
+        if (connection.isBroken()) {
+            invalidate(connection);
+            return;
+        }
+        boolean discard;
+        synchronized (this) {
+            Entry entry = inUse.remove(connection);
+            if (entry == null) return;
+            entry.lastUsed = entry.lastChecked = System.currentTimeMillis();
+            discard = closed || entry.lastUsed - entry.createdAt > maxLifetimeMillis;
+            if (discard) {
+                total--;
+            } else {
+                idle.push(entry);
+            }
+            notifyAll();
+        }
+        if (discard)
+            connection.close();
+    }
+
+    /**
+     * Removes a connection that failed (or is otherwise unusable) from the pool and closes it.
+     */
+    public void invalidate(DictionaryConnection connection) {
+        synchronized (this) {
+            if (inUse.remove(connection) == null) return;
+            total--;
+            notifyAll();
+        }
+        connection.close();
+    }
+
+    /**
+     * Runs a call with a borrowed connection. The connection is returned to the pool afterwards, even if the call
+     * failed with a negative reply; it is only discarded if the failure broke it (see DictionaryConnection.isBroken).
+     */
+    public <T> T execute(PooledCall<T> call) throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        long start = System.nanoTime();
+        try {
+            T result = call.call(connection);
+            release(connection);
+            latency.record(System.nanoTime() - start);
+            return result;
+        } catch (DictConnectionException | RuntimeException e) {
+            release(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a call like executeHedged, replaying it when it fails because its connection was lost (a connection closed
+     * by the server while idle, a reset, or a server that can't be reached for a moment): the call is run again on
+     * another connection, a new one if needed, up to the number of retries of the retry policy. Other failures,
+     * including timeouts and negative replies, are not retried. Only calls that are safe to repeat should be used.
+     */
+    public <T> T executeWithRetry(PooledCall<T> call) throws DictConnectionException {
+        return retrying(call, true, () -> true);
+    }
+
+    private <T> T retrying(PooledCall<T> call, boolean hedged, BooleanSupplier replayable)
+            throws DictConnectionException {
+        long backoff = retryBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return hedged ? executeHedged(call) : execute(call);
+            } catch (DictConnectionLostException e) {
+                if (attempt >= maxRetries || !replayable.getAsBoolean())
+                    throw e;
+            }
+            retriedCalls.incrementAndGet();
+            // A stale idle connection is usually replaced right away; only back off if that didn't help
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DictConnectionException(e);
+                }
+                backoff = Math.min(backoff * 2, maxRetryBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * Runs a call like execute, but if it doesn't complete within the hedge delay (see setHedgeDelayMillis), runs it
+     * again on a second connection and returns whichever result comes first; the other call is aborted and its
+     * connection discarded. The call fails only if both attempts fail. Only calls that are safe to repeat (lookups
+     * without side effects) should be hedged. Without hedging, or with a pool of a single connection, this is the same
+     * as execute.
+     */
+    public <T> T executeHedged(PooledCall<T> call) throws DictConnectionException {
+        long delay = hedgeDelayNanos();
+        if (delay < 0 || maxSize < 2)
+            return execute(call);
+        return new HedgedCall<>(call).run(delay);
+    }
+
+    private long hedgeDelayNanos() {
+        long delay = hedgeDelayMillis;
+        if (delay != 0)
+            return delay < 0 ? -1 : delay * 1_000_000;
+        return latency.getCount() < MIN_HEDGE_SAMPLES ? -1 : latency.getValueAtPercentile(95);
+    }
+
+    private synchronized Executor hedgeExecutor() {
+        if (hedgeExecutor == null) {
+            hedgeExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "dict-pool-hedge");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return hedgeExecutor;
+    }
+
+    /**
+     * The attempts of one hedged call, each running on its own connection in the hedge executor.
+     */
+    private class HedgedCall<T> {
+        private final PooledCall<T> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<DictionaryConnection> running = new ArrayList<>(2);
+        private int pending;
+
+        private HedgedCall(PooledCall<T> call) {
+            this.call = call;
+        }
+
+        private T run(long hedgeDelayNanos) throws DictConnectionException {
+            start();
+            try {
+                try {
+                    return result.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    hedgedCalls.incrementAndGet();
+                    start();
+                    return result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.cancel(false);
+                abortRunning();
+                throw new DictConnectionException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof DictConnectionException)
+                    throw (DictConnectionException) e.getCause();
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new DictConnectionException(e.getCause());
+            }
+        }
+
+        private void start() {
+            synchronized (this) {
+                pending++;
+            }
+            try {
+                hedgeExecutor().execute(this::attempt);
+            } catch (RejectedExecutionException e) {
+                failed(new DictConnectionException("Connection pool is closed"));
+            }
+        }
+
+        private void attempt() {
+            DictionaryConnection connection;
+            try {
+                connection = borrow();
+            } catch (DictConnectionException e) {
+                failed(e);
+                return;
+            }
+            boolean done;
+            synchronized (this) {
+                done = result.isDone();
+                if (!done) running.add(connection);
+            }
+            if (done) {
+                release(connection);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                T value = call.call(connection);
+                synchronized (this) {
+                    running.remove(connection);
+                }
+                release(connection);
+                latency.record(System.nanoTime() - start);
+                if (result.complete(value))
+                    abortRunning();
+            } catch (DictConnectionException | RuntimeException e) {
+                synchronized (this) {
+                    running.remove(connection);
+                }
+                // A negative reply leaves the connection usable; release discards it if it is broken
+                release(connection);
+                failed(e);
+            }
+        }
+
+        // Only the last attempt still running completes the result with its failure: a first attempt that fails once
+        // the hedge has started waits for it, but one that fails before the hedge delay fails the call right away
+        private void failed(Exception e) {
+            synchronized (this) {
+                if (--pending > 0) return;
+            }
+            result.completeExceptionally(e);
+        }
+
+        // Aborts while holding the monitor: an attempt removes its connection from running, under the same monitor,
+        // before releasing it, so a connection aborted here can't have been returned to the pool and lent to another
+        // caller yet. An attempt aborted after its call returned finds its connection broken, and release discards it.
+        private synchronized void abortRunning() {
+            for (DictionaryConnection connection : running)
+                connection.abort();
+        }
+    }
+
+    /**
+     * See DictionaryConnection.getDatabaseList. The call is hedged if hedging is enabled, and replayed if
+     * its connection is lost (see executeWithRetry).
+     */
+    public Map<String, Database> getDatabaseList() throws DictConnectionException {
+        return executeWithRetry(DictionaryConnection::getDatabaseList);
+    }
+
+    /**
+     * See DictionaryConnection.getStrategyList. The call is hedged if hedging is enabled, and replayed if
+     * its connection is lost (see executeWithRetry).
+     */
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return executeWithRetry(DictionaryConnection::getStrategyList);
+    }
+
+    /**
+     * See DictionaryConnection.getMatchList. The call is hedged if hedging is enabled, and replayed if
+     * its connection is lost (see executeWithRetry).
+     */
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        return executeWithRetry(c -> c.getMatchList(word, strategy, database));
+    }
+
+    /**
+     * See DictionaryConnection.getDefinitions. The call is hedged if hedging is enabled, and replayed if
+     * its connection is lost (see executeWithRetry).
+     */
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        return executeWithRetry(c -> c.getDefinitions(word, database));
+    }
+
+    /**
+     * See DictionaryConnection.getDefinitions(String, Database, Consumer). The call is replayed if its connection is
+     * lost before any definition was delivered to the consumer.
+     */
+    public int getDefinitions(String word, Database database, Consumer<Definition> consumer) throws DictConnectionException {
+        int[] delivered = new int[1];
+        return retrying(c -> c.getDefinitions(word, database, definition -> {
+            delivered[0]++;
+            consumer.accept(definition);
+        }), false, () -> delivered[0] == 0);
+    }
+
+    /**
+     * Returns the number of connections currently open (idle or in use).
+     */
+    public synchronized int getSize() {
+        return total;
+    }
+
+    /**
+     * Returns the number of connections currently idle in the pool.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Connections currently in use are closed as they are
+     * released.
+     */
+    @Override
+    public void close() {
+        List<Entry> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        if (evictor != null)
+            evictor.shutdownNow();
+        synchronized (this) {
+            if (hedgeExecutor != null)
+                hedgeExecutor.shutdown();
+        }
+        for (Entry entry : toClose)
+            entry.connection.close();
+    }
+
+    private DictionaryConnection open() throws DictConnectionException {
+        try {
+            DictionaryConnection connection = new DictionaryConnection(host, port, connectTimeoutMillis, readTimeoutMillis);
+            synchronized (this) {
+                inUse.put(connection, new Entry(connection));
+            }
+            return connection;
+        } catch (DictConnectionException e) {
+            synchronized (this) {
+                total--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private void maintain() {
+        evict();
+        keepAlive();
+    }
+
+    /**
+     * Sends STATUS on the idle connections that haven't been used or checked for the keep-alive interval, taking them
+     * out of the idle list meanwhile. Connections that fail are discarded (and replaced by the next evict).
+     */
+    private void keepAlive() {
+        long interval = keepAliveIntervalMillis;
+        if (interval <= 0) return;
+        List<Entry> toCheck = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return;
+            long now = System.currentTimeMillis();
+            for (Iterator<Entry> it = idle.iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (now - entry.lastChecked > interval) {
+                    it.remove();
+                    inUse.put(entry.connection, entry);
+                    toCheck.add(entry);
+                }
+            }
+        }
+        for (Entry entry : toCheck) {
+            try {
+                entry.connection.getStatus();
+            } catch (DictConnectionException e) {
+                invalidate(entry.connection);
+                continue;
+            }
+            boolean discard;
+            synchronized (this) {
+                inUse.remove(entry.connection);
+                entry.lastChecked = System.currentTimeMillis();
+                discard = closed;
+                if (discard) {
+                    total--;
+                } else {
+                    idle.addLast(entry); // keeps least recently used last, for eviction
+                    notifyAll();
+                }
+            }
+            if (discard)
+                entry.connection.close();
+        }
+    }
+
+    private void evict() {
+        List<Entry> toClose = new ArrayList<>();
+        int missing;
+        synchronized (this) {
+            if (closed) return;
+            long now = System.currentTimeMillis();
+            Iterator<Entry> it = idle.descendingIterator(); // least recently used first
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                boolean expired = now - entry.createdAt > maxLifetimeMillis;
+                boolean unused = now - entry.lastUsed > idleTimeoutMillis && total > minSize;
+                if (expired || unused) {
+                    it.remove();
+                    total--;
+                    toClose.add(entry);
+                }
+            }
+            missing = Math.max(0, minSize - total);
+            total += missing;
+        }
+        for (Entry entry : toClose)
+            entry.connection.close();
+
+        for (int i = 0; i < missing; i++) {
+            try {
+                Entry entry = new Entry(new DictionaryConnection(host, port, connectTimeoutMillis, readTimeoutMillis));
+                boolean discard;
+                synchronized (this) {
+                    discard = closed;
+                    if (discard) {
+                        total--;
+                    } else {
+                        idle.addLast(entry);
+                        notifyAll();
+                    }
+                }
+                if (discard)
+                    entry.connection.close();
+            } catch (DictConnectionException e) {
+                synchronized (this) {
+                    total--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * Receives measurements from DictionaryConnection: one call per command and per connection event. Methods are called
+ * on the thread that issued the command, while it holds the connection, so implementations must be thread-safe and
+ * fast. Connections without a listener don't measure anything.
+ *
+ * @see DictionaryStatistics
+ */
+public interface DictionaryMetrics {
+
+    /**
+     * A connection was established and its welcome banner read.
+     */
+    void connectionOpened(String host, int port, long connectNanos);
+
+    /**
+     * A connection could not be established.
+     */
+    void connectionFailed(String host, int port, DictConnectionException cause);
+
+    /**
+     * A connection was closed after a number of commands.
+     */
+    void connectionClosed(String host, int port, long lifetimeNanos, long commandCount);
+
+    /**
+     * A command received a complete reply (positive or negative).
+     *
+     * @param command    The command name: MATCH, DEFINE, SHOW DB, SHOW STRAT or STATUS.
+     * @param statusCode The last status code of the reply (250 for most successful replies, 552 for no match, etc.).
+     * @param nanos      The time from sending the command to reading the end of its reply.
+     * @param lines      The number of lines in the reply, including status lines.
+     * @param bytes      The size of the reply in bytes.
+     */
+    void commandCompleted(String command, int statusCode, long nanos, long lines, long bytes);
+
+    /**
+     * A command failed: the server sent a negative or unexpected reply, the reply was invalid, or the connection broke.
+     *
+     * @param command    The command name, as in commandCompleted.
+     * @param statusCode The code of the last status line read in the reply (e.g., 550 for an invalid database), or 0
+     *                   if the command failed before a status line was read.
+     * @param nanos      The time from sending the command to the failure.
+     * @param cause      The exception the command failed with.
+     */
+    void commandFailed(String command, int statusCode, long nanos, DictConnectionException cause);
+}
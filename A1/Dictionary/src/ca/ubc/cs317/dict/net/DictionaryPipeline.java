@@ -0,0 +1,210 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Pipelined access to a DICT server. Commands are written to the connection back to back, without waiting for the
+ * previous reply, and a background thread reads the replies in the order the commands were sent, completing one
+ * CompletableFuture per command. A batch of N lookups therefore costs roughly one round trip plus transfer time
+ * instead of N round trips.
+ * <p>
+ * While a pipeline is open it owns the connection: the synchronous methods of DictionaryConnection must not be used
+ * until the pipeline is closed.
+ */
+public class DictionaryPipeline implements AutoCloseable {
+
+    private static class PendingReply<T> {
+        private final String name;
+        private final DictionaryConnection.ReplyReader<T> reader;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private long sentAt;
+
+        private PendingReply(String name, DictionaryConnection.ReplyReader<T> reader) {
+            this.name = name;
+            this.reader = reader;
+        }
+
+        private void readFrom(DictionaryConnection connection) throws DictConnectionException {
+            future.complete(connection.readReply(name, sentAt, reader));
+        }
+    }
+
+    // Marks the end of the pipeline for the reading thread
+    private static final PendingReply<Void> END = new PendingReply<>(null, in -> null);
+
+    private final DictionaryConnection connection;
+    private final BlockingQueue<PendingReply<?>> pending = new LinkedBlockingQueue<>();
+    private final Thread readerThread;
+    private volatile DictConnectionException failure;
+    private volatile LatencyHistogram latency;
+    private boolean closed;
+
+    /**
+     * Opens a pipeline over an established connection.
+     *
+     * @param connection The connection used to send commands and read replies.
+     */
+    public DictionaryPipeline(DictionaryConnection connection) {
+        this.connection = connection;
+        this.readerThread = new Thread(this::readReplies, "dict-pipeline-reader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /**
+     * Queues a MATCH command. See DictionaryConnection.getMatchList for the meaning of the parameters.
+     *
+     * @return A future completed with the set of matches once the reply is read.
+     */
+    public CompletableFuture<Set<String>> getMatchList(String word, MatchingStrategy strategy, Database database) {
+        return send(DictionaryConnection.matchCommand(word, strategy, database),
+                DictionaryConnection::readMatchList, true);
+    }
+
+    /**
+     * Queues a DEFINE command. See DictionaryConnection.getDefinitions for the meaning of the parameters.
+     *
+     * @return A future completed with the definitions once the reply is read.
+     */
+    public CompletableFuture<Collection<Definition>> getDefinitions(String word, Database database) {
+        return send(DictionaryConnection.defineCommand(word, database),
+                DictionaryConnection::readDefinitions, true);
+    }
+
+    /**
+     * Queues one MATCH command per word, writing all of them before flushing the connection.
+     *
+     * @return A map from each word to the future of its matches, in the same order as the words.
+     */
+    public Map<String, CompletableFuture<Set<String>>> getMatchLists(Collection<String> words, MatchingStrategy strategy,
+                                                                     Database database) {
+        Map<String, CompletableFuture<Set<String>>> result = new LinkedHashMap<>();
+        synchronized (connection) {
+            for (String word : words)
+                result.put(word, send(DictionaryConnection.matchCommand(word, strategy, database),
+                        DictionaryConnection::readMatchList, false));
+            connection.out.flush();
+        }
+        return result;
+    }
+
+    /**
+     * Queues one DEFINE command per word, writing all of them before flushing the connection.
+     *
+     * @return A map from each word to the future of its definitions, in the same order as the words.
+     */
+    public Map<String, CompletableFuture<Collection<Definition>>> getDefinitions(Collection<String> words,
+                                                                                 Database database) {
+        Map<String, CompletableFuture<Collection<Definition>>> result = new LinkedHashMap<>();
+        synchronized (connection) {
+            for (String word : words)
+                result.put(word, send(DictionaryConnection.defineCommand(word, database),
+                        DictionaryConnection::readDefinitions, false));
+            connection.out.flush();
+        }
+        return result;
+    }
+
+    /**
+     * Records, for each command from now on, the time from writing it to reading its reply (or failing to), in
+     * nanoseconds. Commands failed without being read, because an earlier reply broke the connection, are not recorded.
+     */
+    public void setLatencyHistogram(LatencyHistogram latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Returns the number of commands sent whose replies were not read yet.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops accepting new commands, waits for all outstanding replies to be read and stops the reading thread. The
+     * underlying connection is left open and may be used (or closed) directly afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (connection) {
+            if (closed) return;
+            closed = true;
+            pending.add(END);
+        }
+        try {
+            readerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> send(String command, DictionaryConnection.ReplyReader<T> reader, boolean flush) {
+        // The command name used in metrics, e.g. MATCH
+        PendingReply<T> reply = new PendingReply<>(command.substring(0, command.indexOf(' ')), reader);
+        reply.sentAt = System.nanoTime();
+        synchronized (connection) {
+            if (closed) {
+                reply.future.completeExceptionally(new DictConnectionException("Pipeline is closed"));
+            } else if (failure != null) {
+                reply.future.completeExceptionally(failure);
+            } else {
+                // The reply must be queued before the command is written, otherwise the reader could miss it
+                pending.add(reply);
+                PrintWriter out = connection.out;
+                out.print(command);
+                out.print("\r\n");
+                if (flush) out.flush();
+            }
+        }
+        return reply.future;
+    }
+
+    private void readReplies() {
+        try {
+            while (true) {
+                PendingReply<?> reply = pending.take();
+                if (reply == END) return;
+                try {
+                    reply.readFrom(connection);
+                } catch (DictConnectionException | RuntimeException e) {
+                    record(reply);
+                    // A negative reply fails only its command; after any other failure the stream position is
+                    // unknown, so nothing else can be read from it
+                    if (!connection.isBroken() && e instanceof DictConnectionException) {
+                        reply.future.completeExceptionally(e);
+                        continue;
+                    }
+                    failure = e instanceof DictConnectionException ? (DictConnectionException) e :
+                            new DictConnectionException(e);
+                    reply.future.completeExceptionally(e);
+                    failPending(failure);
+                    return;
+                }
+                record(reply);
+            }
+        } catch (InterruptedException e) {
+            failPending(new DictConnectionException(e));
+        }
+    }
+
+    private void record(PendingReply<?> reply) {
+        LatencyHistogram latency = this.latency;
+        if (latency != null) latency.record(System.nanoTime() - reply.sentAt);
+    }
+
+    private void failPending(DictConnectionException e) {
+        synchronized (connection) {
+            PendingReply<?> reply;
+            while ((reply = pending.poll()) != null)
+                reply.future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The dictionary operations used by the client, independently of where the dictionary lives: a DICT server (through a
+ * single connection or a pool) or a local index. See DictionaryConnection for the meaning of each operation, including
+ * the special database names "*" and "!".
+ */
+public interface DictionaryService extends AutoCloseable {
+
+    Map<String, Database> getDatabaseList() throws DictConnectionException;
+
+    Set<MatchingStrategy> getStrategyList() throws DictConnectionException;
+
+    Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException;
+
+    Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException;
+
+    int getDefinitions(String word, Database database, Consumer<Definition> consumer) throws DictConnectionException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,215 @@
+package ca.ubc.cs317.dict.net;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A DictionaryMetrics listener that aggregates everything it receives: a latency histogram and traffic counters per
+ * command, counts per status code, and connection statistics. It can be shared by any number of connections (for
+ * instance, set as the default metrics of DictionaryConnection), and exposed through JMX with register.
+ */
+public class DictionaryStatistics implements DictionaryMetrics, DictionaryStatisticsMBean {
+
+    private static class CommandStatistics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder lines = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+    private final Map<String, CommandStatistics> commands = new ConcurrentHashMap<>();
+    private final AtomicLongArray statusCodes = new AtomicLongArray(600);
+    private final AtomicLongArray failedStatusCodes = new AtomicLongArray(600); // 0 for failures without a status
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LongAdder connectionsFailed = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder lifetimeNanos = new LongAdder();
+
+    /**
+     * Registers this object in the platform MBean server, under the name
+     * <tt>ca.ubc.cs317.dict:type=DictionaryStatistics,name=<i>name</i></tt>.
+     *
+     * @return The name under which the object was registered.
+     * @throws JMException If the name is invalid or already registered.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("ca.ubc.cs317.dict:type=DictionaryStatistics,name=" +
+                ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void connectionOpened(String host, int port, long connectNanos) {
+        connectTime.record(connectNanos);
+    }
+
+    @Override
+    public void connectionFailed(String host, int port, DictConnectionException cause) {
+        connectionsFailed.increment();
+    }
+
+    @Override
+    public void connectionClosed(String host, int port, long lifetimeNanos, long commandCount) {
+        connectionsClosed.increment();
+        this.lifetimeNanos.add(lifetimeNanos);
+    }
+
+    @Override
+    public void commandCompleted(String command, int statusCode, long nanos, long lines, long bytes) {
+        CommandStatistics statistics = statistics(command);
+        statistics.latency.record(nanos);
+        statistics.lines.add(lines);
+        statistics.bytes.add(bytes);
+        if (statusCode > 0 && statusCode < statusCodes.length())
+            statusCodes.incrementAndGet(statusCode);
+    }
+
+    @Override
+    public void commandFailed(String command, int statusCode, long nanos, DictConnectionException cause) {
+        statistics(command).failures.increment();
+        if (statusCode >= 0 && statusCode < failedStatusCodes.length())
+            failedStatusCodes.incrementAndGet(statusCode);
+    }
+
+    /**
+     * Returns the latency histogram of a command (in nanoseconds), or null if the command was never completed.
+     */
+    public LatencyHistogram getLatencyHistogram(String command) {
+        CommandStatistics statistics = commands.get(command);
+        return statistics == null ? null : statistics.latency;
+    }
+
+    @Override
+    public long getCommandCount() {
+        long total = 0;
+        for (CommandStatistics statistics : commands.values())
+            total += statistics.latency.getCount();
+        return total;
+    }
+
+    @Override
+    public long getFailedCommandCount() {
+        long total = 0;
+        for (CommandStatistics statistics : commands.values())
+            total += statistics.failures.sum();
+        return total;
+    }
+
+    @Override
+    public long getLinesRead() {
+        long total = 0;
+        for (CommandStatistics statistics : commands.values())
+            total += statistics.lines.sum();
+        return total;
+    }
+
+    @Override
+    public long getBytesRead() {
+        long total = 0;
+        for (CommandStatistics statistics : commands.values())
+            total += statistics.bytes.sum();
+        return total;
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectTime.getCount();
+    }
+
+    @Override
+    public long getConnectionsFailed() {
+        return connectionsFailed.sum();
+    }
+
+    @Override
+    public long getOpenConnections() {
+        return Math.max(0, connectTime.getCount() - connectionsClosed.sum());
+    }
+
+    @Override
+    public double getMeanConnectionLifetimeMillis() {
+        long closed = connectionsClosed.sum();
+        return closed == 0 ? 0 : lifetimeNanos.sum() / 1e6 / closed;
+    }
+
+    @Override
+    public double getMeanConnectMillis() {
+        return connectTime.getMean() / 1e6;
+    }
+
+    @Override
+    public String[] getCommandSummaries() {
+        List<String> summaries = new ArrayList<>();
+        for (Map.Entry<String, CommandStatistics> entry : new TreeMap<>(commands).entrySet()) {
+            CommandStatistics statistics = entry.getValue();
+            LatencyHistogram latency = statistics.latency;
+            summaries.add(String.format("%s: count=%d failed=%d lines=%d bytes=%d p50=%.2fms p99=%.2fms max=%.2fms",
+                    entry.getKey(), latency.getCount(), statistics.failures.sum(), statistics.lines.sum(),
+                    statistics.bytes.sum(), latency.getValueAtPercentile(50) / 1e6,
+                    latency.getValueAtPercentile(99) / 1e6, latency.getMax() / 1e6));
+        }
+        return summaries.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getStatusCodeCounts() {
+        return counts(statusCodes);
+    }
+
+    @Override
+    public String[] getFailedStatusCodeCounts() {
+        return counts(failedStatusCodes);
+    }
+
+    @Override
+    public double getLatencyMillis(String command, double percentile) {
+        LatencyHistogram latency = getLatencyHistogram(command);
+        return latency == null ? 0 : latency.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    /**
+     * Clears all statistics. Open connections are no longer counted as open.
+     */
+    @Override
+    public void reset() {
+        commands.clear();
+        for (int i = 0; i < statusCodes.length(); i++) {
+            statusCodes.set(i, 0);
+            failedStatusCodes.set(i, 0);
+        }
+        connectTime.reset();
+        connectionsFailed.reset();
+        connectionsClosed.reset();
+        lifetimeNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.join("\n", getCommandSummaries());
+    }
+
+    private static String[] counts(AtomicLongArray codes) {
+        List<String> counts = new ArrayList<>();
+        for (int code = 0; code < codes.length(); code++) {
+            long count = codes.get(code);
+            if (count > 0) counts.add(code + ": " + count);
+        }
+        return counts.toArray(new String[0]);
+    }
+
+    private CommandStatistics statistics(String command) {
+        CommandStatistics statistics = commands.get(command);
+        return statistics != null ? statistics : commands.computeIfAbsent(command, c -> new CommandStatistics());
+    }
+}
@@ -0,0 +1,45 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * The JMX view of DictionaryStatistics. Latencies are in milliseconds.
+ */
+public interface DictionaryStatisticsMBean {
+
+    long getCommandCount();
+
+    long getFailedCommandCount();
+
+    long getLinesRead();
+
+    long getBytesRead();
+
+    long getConnectionsOpened();
+
+    long getConnectionsFailed();
+
+    long getOpenConnections();
+
+    double getMeanConnectionLifetimeMillis();
+
+    double getMeanConnectMillis();
+
+    /**
+     * One line per command name, with its count, failures, traffic and latency percentiles.
+     */
+    String[] getCommandSummaries();
+
+    /**
+     * One line per status code received, with its count.
+     */
+    String[] getStatusCodeCounts();
+
+    /**
+     * One line per status code that failed a command, with its count; code 0 counts failures before any status line
+     * was read (e.g., a lost connection).
+     */
+    String[] getFailedStatusCodeCounts();
+
+    double getLatencyMillis(String command, double percentile);
+
+    void reset();
+}
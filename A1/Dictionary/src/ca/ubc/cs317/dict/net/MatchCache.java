@@ -0,0 +1,179 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.*;
+
+/**
+ * A client-side cache of MATCH results, organized as one prefix trie per (database, strategy) pair. For the "prefix"
+ * strategy, the matches for a word are a subset of the matches for any prefix of that word, so if the server returned
+ * a complete result for "di", the result for "dic" is computed locally by filtering it. Other strategies are only
+ * answered from the cache when the exact same word was looked up before.
+ */
+public class MatchCache {
+
+    /**
+     * Source of matches used when a lookup can't be answered from the cache, such as
+     * DictionaryConnectionPool::getMatchList.
+     */
+    public interface Loader {
+        Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException;
+    }
+
+    private static final String PREFIX_STRATEGY = "prefix";
+
+    // Strategies that compare words ignoring case, so that "Dict" and "dict" can share an entry. Other strategies,
+    // e.g. "re" and "regexp" whose patterns may depend on case, and strategies unknown to the client, keep the case.
+    private static final Set<String> CASE_INSENSITIVE_STRATEGIES = new HashSet<>(Arrays.asList(
+            "exact", "prefix", "nprefix", "substring", "suffix", "soundex", "lev", "word", "first", "last"));
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private Set<String> matches;
+        private boolean complete;
+    }
+
+    private final int completeLimit;
+    private final int maxEntries;
+    private final Map<String, Node> roots = new HashMap<>();
+    private int entries;
+
+    private long hits;
+    private long filteredHits;
+    private long misses;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param completeLimit Servers may truncate long match lists, so a result with this many matches or more is not
+     *                      considered complete and is never used to answer longer prefixes.
+     * @param maxEntries    Maximum number of cached results. The whole cache is dropped when it grows past this size,
+     *                      since suggestions quickly move on to other prefixes.
+     */
+    public MatchCache(int completeLimit, int maxEntries) {
+        this.completeLimit = completeLimit;
+        this.maxEntries = maxEntries;
+    }
+
+    public MatchCache() {
+        this(1000, 10000);
+    }
+
+    /**
+     * Returns the matches for a word, from the cache if possible, or from the loader otherwise. Results obtained from
+     * the loader are added to the cache.
+     *
+     * @param word     The word pattern to be matched.
+     * @param strategy The strategy to be used to retrieve the list of matches.
+     * @param database The database to be used to retrieve the matches.
+     * @param loader   The source of matches for lookups not answered by the cache.
+     * @return An unmodifiable set of matches, possibly empty.
+     * @throws DictConnectionException If the loader fails. Failures are not cached.
+     */
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database, Loader loader)
+            throws DictConnectionException {
+        Set<String> cached = getIfPresent(word, strategy, database);
+        if (cached != null)
+            return cached;
+        Set<String> matches = Collections.unmodifiableSet(new LinkedHashSet<>(loader.getMatchList(word, strategy, database)));
+        synchronized (this) {
+            store(word, strategy, database, matches, matches.size() < completeLimit);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the cached matches for a word, or null if they can't be determined without querying the server.
+     */
+    public synchronized Set<String> getIfPresent(String word, MatchingStrategy strategy, Database database) {
+        String key = normalize(word, strategy);
+        Node node = root(strategy, database, false);
+        Node completeAncestor = null;
+        for (int i = 0; node != null; i++) {
+            if (node.matches != null && node.complete)
+                completeAncestor = node;
+            if (i == key.length()) break;
+            node = node.children.get(key.charAt(i));
+        }
+
+        if (node != null && node.matches != null) {
+            hits++;
+            return node.matches;
+        }
+        if (completeAncestor == null || !strategy.getName().equals(PREFIX_STRATEGY)) {
+            misses++;
+            return null;
+        }
+
+        Set<String> filtered = new LinkedHashSet<>();
+        for (String match : completeAncestor.matches) {
+            if (normalize(match, strategy).startsWith(key))
+                filtered.add(match);
+        }
+        filteredHits++;
+        return store(word, strategy, database, Collections.unmodifiableSet(filtered), true);
+    }
+
+    /**
+     * Removes all entries from the cache. Counters are not reset.
+     */
+    public synchronized void clear() {
+        roots.clear();
+        entries = 0;
+    }
+
+    /**
+     * Returns the number of lookups answered with a result previously returned by the server for the same word.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups answered by filtering the result of a shorter prefix.
+     */
+    public synchronized long getFilteredHitCount() {
+        return filteredHits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private Set<String> store(String word, MatchingStrategy strategy, Database database, Set<String> matches,
+                              boolean complete) {
+        if (entries >= maxEntries)
+            clear();
+        Node node = find(word, strategy, database, true);
+        if (node.matches == null)
+            entries++;
+        node.matches = matches;
+        node.complete = complete;
+        return matches;
+    }
+
+    private Node root(MatchingStrategy strategy, Database database, boolean create) {
+        String key = database.getName() + " " + strategy.getName();
+        Node root = roots.get(key);
+        if (root == null && create)
+            roots.put(key, root = new Node());
+        return root;
+    }
+
+    private Node find(String word, MatchingStrategy strategy, Database database, boolean create) {
+        String key = normalize(word, strategy);
+        Node node = root(strategy, database, create);
+        for (int i = 0; node != null && i < key.length(); i++) {
+            Node child = node.children.get(key.charAt(i));
+            if (child == null && create)
+                node.children.put(key.charAt(i), child = new Node());
+            node = child;
+        }
+        return node;
+    }
+
+    private static String normalize(String word, MatchingStrategy strategy) {
+        return CASE_INSENSITIVE_STRATEGIES.contains(strategy.getName()) ? word.toLowerCase(Locale.ROOT) : word;
+    }
+}
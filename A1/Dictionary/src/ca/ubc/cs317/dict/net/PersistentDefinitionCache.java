@@ -0,0 +1,480 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of DEFINE results, so that a restarted client doesn't have to fetch its warm set again. It uses
+ * two files in a directory:
+ * <ul>
+ *     <li><tt>definitions.dat</tt>, an append-only log of records, each holding the definitions of one (word,
+ *     database) pair, protected by a length and a CRC;</li>
+ *     <li><tt>definitions.idx</tt>, an open-addressing hash table from the key's hash to the offset and time of its
+ *     latest record, accessed through a memory mapping.</li>
+ * </ul>
+ * Opening the cache maps the index instead of reading the log, so startup time depends on the index size only. The
+ * index header records how much of the log it covers; records appended after that (e.g., before a crash) are replayed
+ * on open, and a torn record at the end of the log is truncated. If the index is missing or damaged it is rebuilt from
+ * the log. Since replaced and expired records stay in the log, compact rewrites it with the live records only; this is
+ * done on open once expired entries make up a quarter of the index.
+ * <p>
+ * The index is never truncated, replaced or deleted while it is mapped, which Windows doesn't allow: a grown index is
+ * written to a new file, and moved over the old one once the old mapping is released.
+ */
+public class PersistentDefinitionCache implements AutoCloseable {
+
+    private static final int INDEX_MAGIC = 0x44494458;   // "DIDX"
+    private static final int RECORD_MAGIC = 0x44524543;  // "DREC"
+    private static final int HEADER_SIZE = 32;           // magic, capacity, count, pad, data length, pad
+    private static final int SLOT_SIZE = 24;             // key hash, record offset, time stored
+    private static final int RECORD_HEADER_SIZE = 12;    // magic, payload length, payload CRC
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The cache is compacted on open if it has at least this many entries, and at least one in COMPACTION_RATIO expired
+    private static final int MIN_COMPACTION_ENTRIES = 64;
+    private static final int COMPACTION_RATIO = 4;
+
+    private final Path directory;
+    private final Path dataFile;
+    private final Path indexFile;
+    private final Path newIndexFile;
+    private final long maxAgeMillis;
+
+    private FileChannel data;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private long dataLength;
+
+    /**
+     * Opens (or creates) a cache in a directory.
+     *
+     * @param directory    The directory holding the cache files. It is created if needed.
+     * @param maxAgeMillis Entries stored longer ago than this are ignored (and dropped on compaction).
+     * @throws IOException If the files can't be created or read.
+     */
+    public PersistentDefinitionCache(Path directory, long maxAgeMillis) throws IOException {
+        this.directory = directory;
+        this.dataFile = directory.resolve("definitions.dat");
+        this.indexFile = directory.resolve("definitions.idx");
+        this.newIndexFile = directory.resolve("definitions.idx.tmp");
+        this.maxAgeMillis = maxAgeMillis;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Returns the definitions of a word, from the disk if available and recent enough, or from the loader otherwise.
+     * Results obtained from the loader are appended to the cache, unless they are empty: a word without definitions
+     * may be added to the server at any time, so it is only worth caching for much less than the maximum age (see
+     * DefinitionCache). Failures of the cache itself are reported on the standard error and treated as misses, so they
+     * never prevent a lookup.
+     */
+    public Collection<Definition> getDefinitions(String word, Database database, DefinitionCache.Loader loader)
+            throws DictConnectionException {
+        Collection<Definition> cached = getIfPresent(word, database);
+        if (cached != null)
+            return cached;
+        Collection<Definition> definitions = loader.getDefinitions(word, database);
+        if (!definitions.isEmpty())
+            put(word, database, definitions);
+        return definitions;
+    }
+
+    /**
+     * Returns the cached definitions of a word, or null if they are not cached, too old or unreadable, or if the cache
+     * is closed.
+     */
+    public synchronized Collection<Definition> getIfPresent(String word, Database database) {
+        if (index == null) return null;
+        String key = key(word, database);
+        try {
+            int slot = findSlot(key, hash(key));
+            if (index.getLong(slotPosition(slot)) == 0 || expired(slot, System.currentTimeMillis()))
+                return null;
+            Record record = readRecord(index.getLong(slotPosition(slot) + 8));
+            if (record == null || !record.key.equals(key))
+                return null;
+            if (System.currentTimeMillis() - record.storedAt > maxAgeMillis)
+                return null;
+            return record.definitions;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Appends the definitions of a word to the cache, replacing any previous entry. Errors are reported on the
+     * standard error and otherwise ignored.
+     */
+    public synchronized void put(String word, Database database, Collection<Definition> definitions) {
+        if (index == null) return;
+        String key = key(word, database);
+        try {
+            long offset = dataLength;
+            long storedAt = System.currentTimeMillis();
+            byte[] record = encodeRecord(key, storedAt, definitions);
+            data.write(ByteBuffer.wrap(record), offset);
+            // Inserted before dataLength is updated, so that an index grown meanwhile doesn't claim to cover the record
+            insert(key, offset, storedAt);
+            dataLength += record.length;
+            // The header is updated last: if we crash before this point the record is replayed on open
+            index.putLong(16, dataLength);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the number of distinct entries in the cache.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the size of the log, including replaced records.
+     */
+    public synchronized long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * Returns the number of entries older than the maximum age, which are dropped on compaction.
+     */
+    public synchronized int getExpiredCount() {
+        if (index == null) return 0;
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (index.getLong(slotPosition(slot)) != 0 && expired(slot, now))
+                expired++;
+        }
+        return expired;
+    }
+
+    /**
+     * Rewrites the log with only the latest record of each entry (dropping entries older than the maximum age), and
+     * rebuilds the index. The new log replaces the old one atomically, and the old index is deleted first, so a crash
+     * during compaction leaves either cache intact (with its index rebuilt on open).
+     */
+    public synchronized void compact() throws IOException {
+        Path newData = directory.resolve("definitions.dat.tmp");
+        long now = System.currentTimeMillis();
+        try (FileChannel out = FileChannel.open(newData, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                if (index.getLong(slotPosition(slot)) == 0 || expired(slot, now)) continue;
+                Record record = readRecord(index.getLong(slotPosition(slot) + 8));
+                if (record == null || now - record.storedAt > maxAgeMillis) continue;
+                byte[] bytes = encodeRecord(record.key, record.storedAt, record.definitions);
+                out.write(ByteBuffer.wrap(bytes), position);
+                position += bytes.length;
+            }
+            out.force(true);
+        }
+        closeFiles();
+        Files.deleteIfExists(indexFile);
+        Files.move(newData, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    /**
+     * Forces all changes to the storage device.
+     */
+    public synchronized void sync() throws IOException {
+        data.force(false);
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (index == null) return;
+        sync();
+        closeFiles();
+    }
+
+    private static class Record {
+        private final String key;
+        private final long storedAt;
+        private final Collection<Definition> definitions;
+        private final int length;
+
+        private Record(String key, long storedAt, Collection<Definition> definitions, int length) {
+            this.key = key;
+            this.storedAt = storedAt;
+            this.definitions = definitions;
+            this.length = length;
+        }
+    }
+
+    private void open() throws IOException {
+        data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileLength = data.size();
+
+        boolean indexValid = false;
+        if (Files.exists(indexFile) && Files.size(indexFile) >= HEADER_SIZE) {
+            mapIndex();
+            indexValid = index.getInt(0) == INDEX_MAGIC && capacity > 0 && Integer.bitCount(capacity) == 1 &&
+                    indexChannel.size() == HEADER_SIZE + (long) capacity * SLOT_SIZE &&
+                    index.getLong(16) <= fileLength;
+            if (!indexValid)
+                unmapIndex();
+        }
+        if (!indexValid) {
+            // The empty index covers none of the log, which is replayed below
+            dataLength = 0;
+            writeIndex(INITIAL_CAPACITY, new long[0], new long[0], new long[0], 0);
+        }
+        count = index.getInt(8);
+        dataLength = index.getLong(16);
+
+        // Replay records not covered by the index, stopping at the first damaged one
+        while (dataLength < fileLength) {
+            Record record = readRecord(dataLength);
+            if (record == null) break;
+            insert(record.key, dataLength, record.storedAt);
+            dataLength += record.length;
+        }
+        if (dataLength < fileLength)
+            data.truncate(dataLength);
+        index.putLong(16, dataLength);
+
+        if (count >= MIN_COMPACTION_ENTRIES && getExpiredCount() * COMPACTION_RATIO >= count)
+            compact();
+    }
+
+    /**
+     * Maps the existing index file, reading its capacity from the header.
+     */
+    private void mapIndex() throws IOException {
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+        capacity = index.getInt(4);
+    }
+
+    /**
+     * Releases the mapping of the index and closes its file.
+     */
+    private void unmapIndex() throws IOException {
+        if (index != null) unmap(index);
+        index = null;
+        if (indexChannel != null) indexChannel.close();
+        indexChannel = null;
+    }
+
+    /**
+     * Writes an index with a capacity and a set of slots to a new file, and moves it over the current index, which is
+     * unmapped first. The new index is then mapped in its place.
+     */
+    private void writeIndex(int newCapacity, long[] hashes, long[] offsets, long[] times, int n) throws IOException {
+        try (FileChannel channel = FileChannel.open(newIndexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+            try {
+                buffer.putInt(0, INDEX_MAGIC);
+                buffer.putInt(4, newCapacity);
+                buffer.putInt(8, n);
+                buffer.putLong(16, dataLength);
+                int mask = newCapacity - 1;
+                for (int i = 0; i < n; i++) {
+                    int slot = (int) hashes[i] & mask;
+                    while (buffer.getLong(slotPosition(slot)) != 0)
+                        slot = (slot + 1) & mask;
+                    buffer.putLong(slotPosition(slot), hashes[i]);
+                    buffer.putLong(slotPosition(slot) + 8, offsets[i]);
+                    buffer.putLong(slotPosition(slot) + 16, times[i]);
+                }
+                buffer.force();
+            } finally {
+                unmap(buffer);
+            }
+        }
+        unmapIndex();
+        Files.move(newIndexFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapIndex();
+    }
+
+    private void insert(String key, long offset, long storedAt) throws IOException {
+        if ((count + 1) * 10L > capacity * 7L)
+            grow();
+        long hash = hash(key);
+        int slot = findSlot(key, hash);
+        int position = slotPosition(slot);
+        if (index.getLong(position) == 0) {
+            count++;
+            index.putInt(8, count);
+        }
+        index.putLong(position, hash);
+        index.putLong(position + 8, offset);
+        index.putLong(position + 16, storedAt);
+    }
+
+    private boolean expired(int slot, long now) {
+        return now - index.getLong(slotPosition(slot) + 16) > maxAgeMillis;
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would be inserted.
+     */
+    private int findSlot(String key, long hash) throws IOException {
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long slotHash = index.getLong(position);
+            if (slotHash == 0)
+                return slot;
+            if (slotHash == hash) {
+                Record record = readRecord(index.getLong(position + 8));
+                if (record == null || record.key.equals(key))
+                    return slot;
+            }
+        }
+    }
+
+    private void grow() throws IOException {
+        long[] hashes = new long[count];
+        long[] offsets = new long[count];
+        long[] times = new long[count];
+        int n = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = slotPosition(slot);
+            if (index.getLong(position) != 0) {
+                hashes[n] = index.getLong(position);
+                offsets[n] = index.getLong(position + 8);
+                times[n++] = index.getLong(position + 16);
+            }
+        }
+        writeIndex(capacity * 2, hashes, offsets, times, n);
+        count = n;
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (offset + RECORD_HEADER_SIZE > data.size() || data.read(header, offset) < RECORD_HEADER_SIZE)
+            return null;
+        header.flip();
+        int magic = header.getInt();
+        int length = header.getInt();
+        int crc = header.getInt();
+        if (magic != RECORD_MAGIC || length < 0 || offset + RECORD_HEADER_SIZE + length > data.size())
+            return null;
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        while (payload.hasRemaining()) {
+            if (data.read(payload, offset + RECORD_HEADER_SIZE + payload.position()) < 0)
+                return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.array());
+        if ((int) checksum.getValue() != crc)
+            return null;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+        String key = readString(in);
+        long storedAt = in.readLong();
+        int n = in.readInt();
+        List<Definition> definitions = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Definition definition = new Definition(readString(in), readString(in));
+            String text = readString(in);
+            if (text != null) definition.setDefinition(text);
+            definitions.add(definition);
+        }
+        return new Record(key, storedAt, Collections.unmodifiableList(definitions), RECORD_HEADER_SIZE + length);
+    }
+
+    private static byte[] encodeRecord(String key, long storedAt, Collection<Definition> definitions) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        writeString(payload, key);
+        payload.writeLong(storedAt);
+        payload.writeInt(definitions.size());
+        for (Definition definition : definitions) {
+            writeString(payload, definition.getWord());
+            writeString(payload, definition.getDatabaseName());
+            writeString(payload, definition.getDefinition());
+        }
+        payload.flush();
+        byte[] body = payloadBytes.toByteArray();
+
+        CRC32 checksum = new CRC32();
+        checksum.update(body);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(RECORD_MAGIC).putInt(body.length).putInt((int) checksum.getValue()).put(body);
+        return record.array();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void closeFiles() throws IOException {
+        if (data != null) data.close();
+        unmapIndex();
+    }
+
+    /**
+     * Releases a mapping immediately instead of when the buffer is garbage collected, which is needed before the file
+     * can be replaced or deleted on Windows. The buffer must not be used afterwards. If the JDK doesn't allow it, the
+     * mapping is left to the garbage collector.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static String key(String word, Database database) {
+        return word.trim().toLowerCase(Locale.ROOT) + '\0' + database.getName();
+    }
+
+    // 64-bit FNV-1a; zero marks an empty slot, so it is never returned
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+}
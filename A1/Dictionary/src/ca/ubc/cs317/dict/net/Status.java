@@ -20,25 +20,29 @@ public class Status {
     private Status(String line) throws DictConnectionException {
         if (line == null)
             throw new DictConnectionException("Status line expected");
-        String[] components = line.split(" ", 2);
-        if (components.length < 2)
+        int space = line.indexOf(' ');
+        if (space < 0)
             throw new DictConnectionException("Invalid status line");
         try {
-            this.statusCode = Integer.parseInt(components[0]);
+            this.statusCode = Integer.parseInt(line, 0, space, 10);
             if (this.statusCode < 100 || this.statusCode > 599)
                 throw new DictConnectionException("Invalid status code received: " + this.statusCode);
         } catch (NumberFormatException ex) {
             throw new DictConnectionException("Status code number expected (" + line + ")", ex);
         }
-        this.details = components[1];
+        this.details = line.substring(space + 1);
     }
 
     public static Status readStatus(BufferedReader input) throws DictConnectionException {
+        Status status;
         try {
-            return new Status(input.readLine());
+            status = new Status(input.readLine());
         } catch (IOException ex) {
-            throw new DictConnectionException();
+            throw new DictConnectionException(ex);
         }
+        if (input instanceof DictLineReader)
+            ((DictLineReader) input).statusRead(status.statusCode);
+        return status;
     }
 
     public int getStatusCode() {
@@ -0,0 +1,216 @@
+package ca.ubc.cs317.dict.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A dictionary database stored in the dictd file format: a sorted <tt>name.index</tt> file with one line per entry
+ * (headword, offset and length, the last two in dictd's base64 encoding, separated by tabs) and an uncompressed
+ * <tt>name.dict</tt> file with the definition texts. The index is loaded in memory and the data file is memory-mapped,
+ * so lookups do not touch the disk once the pages are cached.
+ */
+public class DictdDatabase {
+
+    private static final String B64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private final String name;
+    private final String description;
+    private final String[] headwords;       // sorted by lower-case headword
+    private final String[] normalized;      // lower-case headwords, same order
+    private final long[] offsets;
+    private final int[] lengths;
+    private final MappedByteBuffer data;
+
+    /**
+     * Loads a database from a dictd index file and its data file.
+     *
+     * @param name      The database name, as used in MATCH and DEFINE commands.
+     * @param indexFile The .index file.
+     * @param dictFile  The uncompressed .dict file.
+     * @throws IOException If the files can't be read or the index is invalid.
+     */
+    public DictdDatabase(String name, Path indexFile, Path dictFile) throws IOException {
+        this.name = name;
+
+        List<String[]> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 3)
+                    throw new IOException("Invalid index line in " + indexFile + ": " + line);
+                entries.add(fields);
+            }
+        }
+        entries.sort(Comparator.comparing((String[] e) -> e[0].toLowerCase(Locale.ROOT)));
+
+        headwords = new String[entries.size()];
+        normalized = new String[entries.size()];
+        offsets = new long[entries.size()];
+        lengths = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            String[] entry = entries.get(i);
+            headwords[i] = entry[0];
+            normalized[i] = entry[0].toLowerCase(Locale.ROOT);
+            offsets[i] = decode(entry[1]);
+            lengths[i] = (int) decode(entry[2]);
+        }
+
+        try (FileChannel channel = FileChannel.open(dictFile, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        String shortName = null;
+        int info = find("00-database-short");
+        if (info >= 0) {
+            String[] lines = text(info).split("\n");
+            // The first line repeats the headword
+            shortName = (lines.length > 1 ? lines[1] : lines[0]).trim();
+        }
+        this.description = shortName != null && !shortName.isEmpty() ? shortName : name;
+    }
+
+    /**
+     * Loads all databases found in a directory, one per <tt>.index</tt> file with a matching <tt>.dict</tt> file.
+     * Databases are returned in file name order.
+     */
+    public static List<DictdDatabase> loadDirectory(Path directory) throws IOException {
+        List<DictdDatabase> databases = new ArrayList<>();
+        List<Path> indexFiles = new ArrayList<>();
+        try (var stream = Files.newDirectoryStream(directory, "*.index")) {
+            stream.forEach(indexFiles::add);
+        }
+        Collections.sort(indexFiles);
+        for (Path indexFile : indexFiles) {
+            String fileName = indexFile.getFileName().toString();
+            String dbName = fileName.substring(0, fileName.length() - ".index".length());
+            Path dictFile = directory.resolve(dbName + ".dict");
+            if (Files.exists(dictFile))
+                databases.add(new DictdDatabase(dbName, indexFile, dictFile));
+        }
+        return databases;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     */
+    public int size() {
+        return headwords.length;
+    }
+
+    /**
+     * Returns the headword of an entry, in index order.
+     */
+    public String getHeadword(int entry) {
+        return headwords[entry];
+    }
+
+    /**
+     * Returns the definition text of an entry, in index order.
+     */
+    public String getText(int entry) {
+        return text(entry);
+    }
+
+    /**
+     * Returns the distinct headwords matching a word, using a case-insensitive "exact" or "prefix" strategy.
+     *
+     * @return The matching headwords in index order, or null if the strategy is not supported.
+     */
+    public List<String> match(String word, String strategy) {
+        String key = word.toLowerCase(Locale.ROOT);
+        int first = lowerBound(key);
+        List<String> result = new ArrayList<>();
+        String previous = null;
+        for (int i = first; i < normalized.length; i++) {
+            boolean matches;
+            if (strategy.equals("exact")) matches = normalized[i].equals(key);
+            else if (strategy.equals("prefix")) matches = normalized[i].startsWith(key);
+            else return null;
+            if (!matches) break;
+            if (!headwords[i].equals(previous))
+                result.add(previous = headwords[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the texts of all entries whose headword is equal (ignoring case) to a word.
+     */
+    public List<String> define(String word) {
+        List<String> result = new ArrayList<>();
+        for (int entry : findEntries(word))
+            result.add(text(entry));
+        return result;
+    }
+
+    /**
+     * Returns all entries whose headword is equal (ignoring case) to a word, in index order. Their headwords, as stored
+     * in the index, are read with getHeadword, and their texts with getText.
+     */
+    public List<Integer> findEntries(String word) {
+        String key = word.toLowerCase(Locale.ROOT);
+        List<Integer> result = new ArrayList<>();
+        for (int i = lowerBound(key); i < normalized.length && normalized[i].equals(key); i++)
+            result.add(i);
+        return result;
+    }
+
+    private int find(String word) {
+        int i = lowerBound(word.toLowerCase(Locale.ROOT));
+        return i < normalized.length && normalized[i].equals(word.toLowerCase(Locale.ROOT)) ? i : -1;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0, high = normalized.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (normalized[mid].compareTo(key) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private String text(int entry) {
+        byte[] bytes = new byte[lengths[entry]];
+        ByteBuffer view = data.duplicate();
+        view.position((int) offsets[entry]);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long decode(String value) throws IOException {
+        long result = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int digit = B64.indexOf(value.charAt(i));
+            if (digit < 0)
+                throw new IOException("Invalid base64 number: " + value);
+            result = result * 64 + digit;
+        }
+        return result;
+    }
+
+    static String encode(long value) {
+        if (value == 0) return "A";
+        StringBuilder sb = new StringBuilder();
+        for (; value > 0; value /= 64)
+            sb.append(B64.charAt((int) (value % 64)));
+        return sb.reverse().toString();
+    }
+}
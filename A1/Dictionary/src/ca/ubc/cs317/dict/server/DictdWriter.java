@@ -0,0 +1,67 @@
+package ca.ubc.cs317.dict.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes a database in the dictd file format read by DictdDatabase. Definition texts are written to the .dict file as
+ * they are added, so only the index entries are kept in memory; the .index file is written, sorted, on close.
+ */
+public class DictdWriter implements Closeable {
+
+    private final Path indexFile;
+    private final OutputStream dict;
+    private final List<String[]> entries = new ArrayList<>();
+    private long offset;
+
+    /**
+     * Creates the files of a new database, replacing any existing database with the same name in the directory.
+     *
+     * @param directory   The directory where the files are created.
+     * @param name        The database name, used as the file names.
+     * @param description The short description of the database, stored as its 00-database-short entry.
+     * @throws IOException If the files can't be created.
+     */
+    public DictdWriter(Path directory, String name, String description) throws IOException {
+        Files.createDirectories(directory);
+        this.indexFile = directory.resolve(name + ".index");
+        this.dict = new BufferedOutputStream(Files.newOutputStream(directory.resolve(name + ".dict")));
+        add("00-database-short", "00-database-short\n     " + description + "\n");
+    }
+
+    /**
+     * Adds an entry. Tabs and line breaks in the headword are replaced by spaces, since they delimit index fields.
+     */
+    public void add(String headword, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        dict.write(bytes);
+        entries.add(new String[]{headword.replaceAll("[\t\r\n]", " "), DictdDatabase.encode(offset),
+                DictdDatabase.encode(bytes.length)});
+        offset += bytes.length;
+    }
+
+    /**
+     * Returns the number of entries added so far, not counting the database description.
+     */
+    public int getEntryCount() {
+        return entries.size() - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dict.close();
+        entries.sort(Comparator.comparing((String[] e) -> e[0].toLowerCase(Locale.ROOT)));
+        try (BufferedWriter index = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+            for (String[] entry : entries) {
+                index.write(String.join("\t", entry));
+                index.write('\n');
+            }
+        }
+    }
+}
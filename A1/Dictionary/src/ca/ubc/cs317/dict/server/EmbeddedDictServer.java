@@ -0,0 +1,369 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.net.DictLineTokenizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * An embedded DICT server (RFC 2229 subset: CLIENT, SHOW DB, SHOW STRAT, MATCH, DEFINE, STATUS, QUIT) backed by local
+ * dictd files. A single thread multiplexes all clients with a Selector, so thousands of concurrent connections cost
+ * one socket buffer each rather than one thread each. It can be used as a load-test target and as a local mirror of a
+ * remote server.
+ * <p>
+ * Replies waiting to be sent are queued per client. A client that sends commands without reading their replies stops
+ * being read from once its queue holds MAX_QUEUED_BYTES, until the queue drains, so it can't make the server buffer
+ * without limit (the limit may be exceeded by the replies to one read of commands).
+ * <p>
+ * Run with: java ca.ubc.cs317.dict.server.EmbeddedDictServer [port] directory
+ */
+public class EmbeddedDictServer implements AutoCloseable {
+
+    private static final int DEFAULT_PORT = 2628;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int MAX_QUEUED_BYTES = 1 << 20;
+
+    private static class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private long queuedBytes;
+        private boolean closing;
+        private boolean closed;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final List<DictdDatabase> databases;
+    private final Map<String, DictdDatabase> databasesByName = new HashMap<>();
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private long commands;
+    private long connectionsAccepted;
+    private int clients;    // currently connected
+
+    /**
+     * Starts a server listening on a port, serving the given databases.
+     *
+     * @param port      TCP port to listen on, or 0 for an ephemeral port.
+     * @param databases The databases served, in the order they are listed by SHOW DB.
+     * @throws IOException If the port can't be bound.
+     */
+    public EmbeddedDictServer(int port, List<DictdDatabase> databases) throws IOException {
+        this.databases = new ArrayList<>(databases);
+        for (DictdDatabase database : databases)
+            databasesByName.put(database.getName(), database);
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(this::run, "embedded-dict-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        }
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // nothing
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Client client = new Client(channel);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ, client);
+            connectionsAccepted++;
+            clients++;
+            send(key, "220 embedded.dict.server <mime> <" + connectionsAccepted + "@embedded>\r\n");
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        client.readBuffer.clear();
+        int n = client.channel.read(client.readBuffer);
+        if (n < 0) {
+            disconnect(key);
+            return;
+        }
+        client.readBuffer.flip();
+        StringBuilder replies = new StringBuilder();
+        while (client.readBuffer.hasRemaining() && !client.closing) {
+            byte b = client.readBuffer.get();
+            if (b == '\n') {
+                String command = client.line.toString(StandardCharsets.UTF_8).trim();
+                client.line.reset();
+                if (!command.isEmpty()) {
+                    commands++;
+                    client.closing = execute(command, replies);
+                }
+            } else if (b != '\r') {
+                client.line.write(b);
+                if (client.line.size() > MAX_LINE_LENGTH) {
+                    replies.append("500 line too long\r\n");
+                    client.closing = true;
+                }
+            }
+        }
+        if (replies.length() > 0)
+            send(key, replies.toString());
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        while (!client.writeQueue.isEmpty()) {
+            ByteBuffer buffer = client.writeQueue.peek();
+            client.queuedBytes -= client.channel.write(buffer);
+            if (buffer.hasRemaining()) break;
+            client.writeQueue.poll();
+        }
+        if (client.writeQueue.isEmpty() && client.closing) {
+            disconnect(key);
+            return;
+        }
+        int ops = client.writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+        if (client.queuedBytes < MAX_QUEUED_BYTES)
+            ops |= SelectionKey.OP_READ;
+        key.interestOps(ops);
+    }
+
+    private void send(SelectionKey key, String text) throws IOException {
+        Client client = (Client) key.attachment();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        client.writeQueue.add(ByteBuffer.wrap(bytes));
+        client.queuedBytes += bytes.length;
+        write(key);
+    }
+
+    private void disconnect(SelectionKey key) {
+        Client client = (Client) key.attachment();
+        if (client != null && !client.closed) {
+            client.closed = true;
+            clients--;
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // nothing
+        }
+    }
+
+    /**
+     * Executes one command, appending its reply.
+     *
+     * @return true if the connection should be closed after the reply is sent.
+     */
+    private boolean execute(String command, StringBuilder reply) {
+        DictLineTokenizer tokens = new DictLineTokenizer().reset(command);
+        List<String> args = new ArrayList<>();
+        while (tokens.next())
+            args.add(tokens.atom());
+        String verb = args.get(0).toUpperCase(Locale.ROOT);
+
+        switch (verb) {
+            case "CLIENT":
+                reply.append("250 ok\r\n");
+                return false;
+            case "STATUS":
+                reply.append("210 status [clients=").append(clients).append(" commands=").append(commands).append("]\r\n");
+                return false;
+            case "QUIT":
+                reply.append("221 bye\r\n");
+                return true;
+            case "SHOW":
+                if (args.size() < 2) break;
+                String what = args.get(1).toUpperCase(Locale.ROOT);
+                if (what.equals("DB") || what.equals("DATABASES")) showDatabases(reply);
+                else if (what.equals("STRAT") || what.equals("STRATEGIES")) showStrategies(reply);
+                else break;
+                return false;
+            case "MATCH":
+                if (args.size() != 4) {
+                    reply.append("501 syntax error, illegal parameters\r\n");
+                    return false;
+                }
+                match(args.get(1), args.get(2), args.get(3), reply);
+                return false;
+            case "DEFINE":
+                if (args.size() != 3) {
+                    reply.append("501 syntax error, illegal parameters\r\n");
+                    return false;
+                }
+                define(args.get(1), args.get(2), reply);
+                return false;
+        }
+        reply.append("500 unknown command\r\n");
+        return false;
+    }
+
+    private void showDatabases(StringBuilder reply) {
+        if (databases.isEmpty()) {
+            reply.append("554 no databases present\r\n");
+            return;
+        }
+        reply.append("110 ").append(databases.size()).append(" databases present\r\n");
+        for (DictdDatabase database : databases)
+            reply.append(database.getName()).append(" \"").append(database.getDescription()).append("\"\r\n");
+        reply.append(".\r\n250 ok\r\n");
+    }
+
+    private void showStrategies(StringBuilder reply) {
+        reply.append("111 2 strategies present\r\n")
+                .append("exact \"Match headwords exactly\"\r\n")
+                .append("prefix \"Match prefixes\"\r\n")
+                .append(".\r\n250 ok\r\n");
+    }
+
+    private void match(String databaseName, String strategy, String word, StringBuilder reply) {
+        if (strategy.equals(".")) strategy = "exact";
+        List<DictdDatabase> selected = selectDatabases(databaseName, reply);
+        if (selected == null) return;
+        List<String> lines = new ArrayList<>();
+        for (DictdDatabase database : selected) {
+            List<String> matches = database.match(word, strategy);
+            if (matches == null) {
+                reply.append("551 invalid strategy\r\n");
+                return;
+            }
+            for (String match : matches)
+                lines.add(database.getName() + " \"" + match + "\"");
+            if (databaseName.equals("!") && !matches.isEmpty()) break;
+        }
+        if (lines.isEmpty()) {
+            reply.append("552 no match\r\n");
+            return;
+        }
+        reply.append("152 ").append(lines.size()).append(" matches found\r\n");
+        for (String line : lines)
+            appendTextLine(reply, line);
+        reply.append(".\r\n250 ok\r\n");
+    }
+
+    private void define(String databaseName, String word, StringBuilder reply) {
+        List<DictdDatabase> selected = selectDatabases(databaseName, reply);
+        if (selected == null) return;
+        StringBuilder body = new StringBuilder();
+        int count = 0;
+        for (DictdDatabase database : selected) {
+            List<Integer> entries = database.findEntries(word);
+            for (int entry : entries) {
+                // Like dictd, name the headword as stored, which may differ in case from the word requested
+                body.append("151 \"").append(database.getHeadword(entry)).append("\" ").append(database.getName())
+                        .append(" \"").append(database.getDescription()).append("\"\r\n");
+                for (String line : database.getText(entry).split("\r?\n"))
+                    appendTextLine(body, line);
+                body.append(".\r\n");
+                count++;
+            }
+            if (databaseName.equals("!") && !entries.isEmpty()) break;
+        }
+        if (count == 0) {
+            reply.append("552 no match\r\n");
+            return;
+        }
+        reply.append("150 ").append(count).append(" definitions retrieved\r\n").append(body).append("250 ok\r\n");
+    }
+
+    /**
+     * Returns the databases named in a command. If the name is invalid, appends a 550 reply and returns null.
+     */
+    private List<DictdDatabase> selectDatabases(String databaseName, StringBuilder reply) {
+        if (isSpecial(databaseName))
+            return databases;
+        DictdDatabase database = databasesByName.get(databaseName);
+        if (database == null) {
+            reply.append("550 invalid database, use \"SHOW DB\" for list of databases\r\n");
+            return null;
+        }
+        return Collections.singletonList(database);
+    }
+
+    private static boolean isSpecial(String databaseName) {
+        return databaseName.equals("*") || databaseName.equals("!");
+    }
+
+    private static void appendTextLine(StringBuilder reply, String line) {
+        if (line.startsWith(".")) reply.append('.');
+        reply.append(line).append("\r\n");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: EmbeddedDictServer [port] directory");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path directory = Paths.get(args[args.length - 1]);
+        List<DictdDatabase> databases = DictdDatabase.loadDirectory(directory);
+        EmbeddedDictServer server = new EmbeddedDictServer(port, databases);
+        System.out.println("Serving " + databases.size() + " databases from " + directory + " on port " + server.getPort());
+        server.thread.join();
+    }
+}
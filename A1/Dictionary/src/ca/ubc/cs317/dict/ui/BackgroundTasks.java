@@ -0,0 +1,119 @@
+package ca.ubc.cs317.dict.ui;
+
+import javax.swing.*;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the background work of the user interface (definition and suggestion lookups) and keeps track of it, so that
+ * all outstanding work can be cancelled at once, e.g., when the connection is replaced.
+ * <p>
+ * SwingWorker.execute uses a shared pool limited to ten threads, so a burst of blocking lookups can queue behind each
+ * other. The default mode instead runs each worker on its own thread: a virtual thread when the runtime supports them
+ * (Java 21 or later), or a thread from an unbounded cached pool otherwise.
+ */
+public class BackgroundTasks {
+
+    private final Executor executor;
+    private final Set<SwingWorker<?, ?>> running = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Creates a task runner using a specific executor.
+     *
+     * @param executor The executor used to run workers, or null to use SwingWorker's own pool.
+     */
+    public BackgroundTasks(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a task runner in thread-per-task mode (see newPerTaskExecutor).
+     */
+    public BackgroundTasks() {
+        this(newPerTaskExecutor());
+    }
+
+    /**
+     * Creates a task runner based on the "dict.executor" system property: "swing" uses SwingWorker's own pool, "pool"
+     * a cached thread pool, and anything else (the default) the thread-per-task mode.
+     */
+    public static BackgroundTasks fromSystemProperties() {
+        switch (System.getProperty("dict.executor", "virtual")) {
+            case "swing":
+                return new BackgroundTasks(null);
+            case "pool":
+                return new BackgroundTasks(Executors.newCachedThreadPool(daemonThreads()));
+            default:
+                return new BackgroundTasks();
+        }
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread per task, if the runtime supports virtual threads, or a
+     * cached pool of daemon platform threads otherwise.
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads());
+        }
+    }
+
+    /**
+     * Starts a worker, tracking it until it is done.
+     */
+    public void execute(SwingWorker<?, ?> worker) {
+        synchronized (running) {
+            running.add(worker);
+        }
+        worker.addPropertyChangeListener(e -> {
+            if (worker.isDone()) {
+                synchronized (running) {
+                    running.remove(worker);
+                }
+            }
+        });
+        if (executor == null) worker.execute();
+        else executor.execute(worker);
+    }
+
+    /**
+     * Cancels all workers that are not done yet. Their done methods still run on the event dispatch thread, and see
+     * isCancelled() return true. Threads blocked in socket reads are interrupted, but may only notice it when the read
+     * returns.
+     */
+    public void cancelAll() {
+        SwingWorker<?, ?>[] workers;
+        synchronized (running) {
+            workers = running.toArray(new SwingWorker<?, ?>[0]);
+            running.clear();
+        }
+        for (SwingWorker<?, ?> worker : workers)
+            worker.cancel(true);
+    }
+
+    /**
+     * Returns the number of workers started and not done yet.
+     */
+    public int getRunningCount() {
+        synchronized (running) {
+            return running.size();
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "dict-background-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -78,4 +78,11 @@ public class DefinitionTableModel extends AbstractTableModel {
         definitionList.addAll(definitions);
         fireTableDataChanged();
     }
+
+    public void addDefinitions(Collection<Definition> definitions) {
+        if (definitions.isEmpty()) return;
+        int first = definitionList.size();
+        definitionList.addAll(definitions);
+        fireTableRowsInserted(first, definitionList.size() - 1);
+    }
 }
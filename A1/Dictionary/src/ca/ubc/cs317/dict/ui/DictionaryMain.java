@@ -1,17 +1,29 @@
 package ca.ubc.cs317.dict.ui;
 
+import ca.ubc.cs317.dict.local.LocalDictionary;
+import ca.ubc.cs317.dict.net.DefinitionCache;
 import ca.ubc.cs317.dict.net.DictConnectionException;
 import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
-import ca.ubc.cs317.dict.net.DictionaryConnection2;
-
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.DictionaryService;
+import ca.ubc.cs317.dict.net.DictionaryStatistics;
+import ca.ubc.cs317.dict.net.MatchCache;
+import ca.ubc.cs317.dict.net.PersistentDefinitionCache;
+
+import javax.management.JMException;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 
@@ -20,24 +32,33 @@ import java.util.concurrent.ExecutionException;
  */
 public class DictionaryMain extends JFrame {
 
-    private DictionaryConnection2 connection;
+    private DictionaryService connection;
     private String serverName = "dict.org";
+    private final DefinitionCache definitionCache = new DefinitionCache(32 << 20, 60 * 60_000, 5 * 60_000, true);
+    private final MatchCache matchCache = new MatchCache();
+    private volatile PersistentDefinitionCache persistentCache;
 
     private final DefaultComboBoxModel<Database> databaseModel;
     private final DefaultComboBoxModel<MatchingStrategy> strategyModel;
     private final DefinitionTableModel definitionModel;
 
+    private final BackgroundTasks tasks;
+
     private final WordSearchField wordSearchField;
     private final JTable definitionTable;
+    private SwingWorker<Void, Definition> definitionWorker; // the lookup whose definitions are shown
 
-    DictionaryMain() {
+    DictionaryMain(BackgroundTasks tasks) {
         super("Dictionary");
+        this.tasks = tasks;
         this.setSize(800, 600);
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                tasks.cancelAll();
                 if (connection != null)
                     connection.close();
+                closePersistentCache();
             }
         });
         this.setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -77,7 +98,7 @@ public class DictionaryMain extends JFrame {
         JPanel searchPanel = new JPanel(new BorderLayout());
         this.getContentPane().add(searchPanel, BorderLayout.NORTH);
 
-        wordSearchField = new WordSearchField(this);
+        wordSearchField = new WordSearchField(this, tasks);
         searchPanel.add(wordSearchField, BorderLayout.CENTER);
 
         JButton searchButton = new JButton("Search");
@@ -105,38 +126,83 @@ public class DictionaryMain extends JFrame {
 
     public void showDefinitions() {
 
-        new SwingWorker<Void, Void>() {
+        // Definitions are added to the table as they are read, so the previous lookup must not add any more
+        if (definitionWorker != null)
+            definitionWorker.cancel(true);
+        definitionWorker = new SwingWorker<Void, Definition>() {
             private final String word = Objects.requireNonNullElse(wordSearchField.getSelectedItem(), "").toString();
+            private final Database database = (Database) databaseModel.getSelectedItem();
+            private final PersistentDefinitionCache persistent = persistentCache;
+
+            {
+                definitionModel.populateDefinitions(Collections.emptyList());
+            }
 
             @Override
             protected Void doInBackground() throws Exception {
-                definitionModel.populateDefinitions(connection.getDefinitions(word,
-                        (Database) databaseModel.getSelectedItem()));
+                Collection<Definition> cached = definitionCache.getIfPresent(word, database);
+                if (cached != null) {
+                    publish(cached.toArray(new Definition[0]));
+                    return null;
+                }
+                if (persistent != null) {
+                    cached = persistent.getIfPresent(word, database);
+                    if (cached != null) {
+                        definitionCache.put(word, database, cached);
+                        publish(cached.toArray(new Definition[0]));
+                        return null;
+                    }
+                }
+                // Definitions are shown as soon as each one is read, and cached once the reply is complete
+                List<Definition> definitions = new ArrayList<>();
+                connection.getDefinitions(word, database, definition -> {
+                    definitions.add(definition);
+                    publish(definition);
+                });
+                definitionCache.put(word, database, definitions);
+                // No definitions are only kept in memory, with the short negative TTL of the definition cache
+                if (persistent != null && !definitions.isEmpty())
+                    persistent.put(word, database, definitions);
                 return null;
             }
 
+            @Override
+            protected void process(List<Definition> chunks) {
+                // Chunks published before the lookup was cancelled are still delivered
+                if (isCancelled()) return;
+                int first = definitionModel.getRowCount();
+                definitionModel.addDefinitions(chunks);
+                for (int i = first; i < definitionModel.getRowCount(); i++) {
+                    Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
+                    definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
+                }
+            }
+
             @Override
             protected void done() {
+                if (isCancelled()) return;
                 try {
                     get(); // Just to trigger a possible exception caused by doInBackground
-                    for (int i = 0; i<definitionModel.getRowCount() ; i++) {
-                        Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
-                        definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
-                    }
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } catch (ExecutionException e) {
                     handleException(e.getCause());
                 }
             }
-        }.execute();
+        };
+        tasks.execute(definitionWorker);
 
     }
 
     public void establishConnection() {
+        // Outstanding lookups belong to the old connection
+        tasks.cancelAll();
         if (connection != null)
             connection.close();
+        closePersistentCache();
 
+        definitionCache.clear();
+        matchCache.clear();
         definitionModel.populateDefinitions(Collections.emptyList());
         databaseModel.removeAllElements();
         databaseModel.addElement(new Database("*", "All databases"));
@@ -149,11 +215,20 @@ public class DictionaryMain extends JFrame {
                     serverName);
             if (serverName == null) System.exit(0);
 
-            if (serverName.contains(":")) {
+            if (serverName.startsWith("local:")) {
+                // A directory of dictd files, e.g. created by DictionaryImporter
+                try {
+                    connection = LocalDictionary.open(Paths.get(serverName.substring("local:".length())));
+                } catch (IOException e) {
+                    throw new DictConnectionException(e);
+                }
+            } else if (serverName.contains(":")) {
                 String[] serverData = serverName.split(":", 2);
-                connection = new DictionaryConnection2(serverData[0], Integer.parseInt(serverData[1]));
+                connection = new DictionaryConnectionPool(serverData[0], Integer.parseInt(serverData[1]));
             } else
-                connection = new DictionaryConnection2(serverName);
+                connection = new DictionaryConnectionPool(serverName);
+            if (!(connection instanceof LocalDictionary))
+                openPersistentCache();
 
             for (Database db : connection.getDatabaseList().values()) {
                 databaseModel.addElement(db);
@@ -164,22 +239,64 @@ public class DictionaryMain extends JFrame {
                 if (strategy.getName().equals("prefix"))
                     strategyModel.setSelectedItem(strategy);
             }
-        } catch (DictConnectionException | IOException ex) {
+        } catch (DictConnectionException ex) {
             handleException(ex);
         }
 
         wordSearchField.grabFocus();
     }
 
+    /**
+     * Opens the on-disk definition cache of the current server, if a cache directory was given in the dict.cache.dir
+     * system property. Definitions found there are shown without contacting the server, so a restarted client starts
+     * warm. A cache that can't be opened is simply not used.
+     */
+    private void openPersistentCache() {
+        String directory = System.getProperty("dict.cache.dir");
+        if (directory == null) return;
+        try {
+            persistentCache = new PersistentDefinitionCache(
+                    Paths.get(directory, serverName.replaceAll("[^A-Za-z0-9.-]", "_")), 7L * 24 * 60 * 60_000);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closePersistentCache() {
+        if (persistentCache == null) return;
+        try {
+            persistentCache.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        persistentCache = null;
+    }
+
     public Collection<String> getMatchList(String word) throws DictConnectionException {
-        return connection.getMatchList(word,
+        return matchCache.getMatchList(word,
                 (MatchingStrategy) strategyModel.getSelectedItem(),
-                (Database) databaseModel.getSelectedItem());
+                (Database) databaseModel.getSelectedItem(), connection::getMatchList);
+    }
+
+    /**
+     * Collects the metrics of every connection opened from now on in a DictionaryStatistics object, registered in the
+     * platform MBean server (e.g., to be watched in JConsole).
+     */
+    private static void registerMetrics() {
+        DictionaryStatistics statistics = new DictionaryStatistics();
+        DictionaryConnection.setDefaultMetrics(statistics);
+        try {
+            statistics.register("client");
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
     }
 
     public static void main(String[] args) {
+        if (Boolean.getBoolean("dict.metrics"))
+            registerMetrics();
         SwingUtilities.invokeLater(() -> {
-            DictionaryMain main = new DictionaryMain();
+            DictionaryMain main = new DictionaryMain(BackgroundTasks.fromSystemProperties());
             main.setVisible(true);
             main.establishConnection();
         });
@@ -0,0 +1,172 @@
+package ca.ubc.cs317.dict.ui;
+
+import javax.swing.*;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules suggestion lookups for keystrokes in a text field. Keystrokes that arrive within the configured delay of
+ * each other are coalesced into a single lookup, and a lookup that became obsolete (because the user typed again) is
+ * cancelled: if it was not sent yet it is dropped, otherwise its result is discarded. Blocking socket reads can't be
+ * interrupted, so a request already sent to the server still runs to completion on its own connection.
+ * <p>
+ * All public methods must be called from the event dispatch thread, and the listener is called on that thread too.
+ */
+public class SuggestionScheduler {
+
+    /**
+     * Performs the actual lookup, usually a MATCH request. Called on a background thread.
+     */
+    public interface Lookup {
+        Set<String> lookup(String word) throws Exception;
+    }
+
+    /**
+     * Receives the result of the latest lookup. Called on the event dispatch thread.
+     */
+    public interface Listener {
+        void suggestionsReady(String word, Set<String> suggestions);
+
+        void lookupFailed(Throwable cause);
+    }
+
+    private final Lookup lookup;
+    private final Listener listener;
+    private final BackgroundTasks tasks;
+    private final Timer timer;
+
+    private String pendingWord;
+    private SwingWorker<Set<String>, Void> current;
+
+    private long scheduled;
+    private long coalesced;
+    private long cancelled;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param delayMillis Time without keystrokes after which the lookup is started.
+     * @param lookup      The lookup to be performed in the background.
+     * @param listener    Receives results of lookups that are still current when they complete.
+     * @param tasks       Runs the background lookups.
+     */
+    public SuggestionScheduler(int delayMillis, Lookup lookup, Listener listener, BackgroundTasks tasks) {
+        this.lookup = lookup;
+        this.listener = listener;
+        this.tasks = tasks;
+        this.timer = new Timer(delayMillis, e -> fire());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Sets the time without keystrokes after which a lookup is started. A delay of zero starts lookups immediately
+     * (still cancelling obsolete ones).
+     */
+    public void setDelay(int delayMillis) {
+        timer.setInitialDelay(delayMillis);
+    }
+
+    public int getDelay() {
+        return timer.getInitialDelay();
+    }
+
+    /**
+     * Schedules a lookup for a word, replacing any lookup scheduled but not started yet.
+     */
+    public void schedule(String word) {
+        scheduled++;
+        if (timer.isRunning())
+            coalesced++;
+        pendingWord = word;
+        timer.restart();
+    }
+
+    /**
+     * Cancels any scheduled or running lookup. No result is delivered for them.
+     */
+    public void cancel() {
+        if (timer.isRunning())
+            coalesced++;
+        timer.stop();
+        pendingWord = null;
+        cancelCurrent();
+    }
+
+    /**
+     * Returns the number of lookups requested with schedule.
+     */
+    public long getScheduledCount() {
+        return scheduled;
+    }
+
+    /**
+     * Returns the number of scheduled lookups replaced by a later keystroke before they were started.
+     */
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * Returns the number of started lookups cancelled because they became obsolete.
+     */
+    public long getCancelledCount() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of cancelled lookups that were dropped before reaching the server.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of lookups actually performed.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    private void cancelCurrent() {
+        if (current != null && !current.isDone()) {
+            // A worker that has not started yet will never run once cancelled
+            if (current.getState() == SwingWorker.StateValue.PENDING)
+                dropped.incrementAndGet();
+            current.cancel(false);
+            cancelled++;
+        }
+        current = null;
+    }
+
+    private void fire() {
+        final String word = pendingWord;
+        pendingWord = null;
+        cancelCurrent();
+        if (word == null) return;
+
+        current = new SwingWorker<Set<String>, Void>() {
+            @Override
+            protected Set<String> doInBackground() throws Exception {
+                sent.incrementAndGet();
+                return lookup.lookup(word);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || current != this) return;
+                current = null;
+                try {
+                    listener.suggestionsReady(word, get());
+                } catch (ExecutionException e) {
+                    listener.lookupFailed(e.getCause());
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        tasks.execute(current);
+    }
+}
@@ -6,22 +6,29 @@ import javax.swing.event.DocumentListener;
 import javax.swing.plaf.metal.MetalComboBoxEditor;
 import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Created by Jonatan on 2017-09-10.
  */
-public class WordSearchField extends JComboBox<String> implements DocumentListener {
+public class WordSearchField extends JComboBox<String> implements DocumentListener, SuggestionScheduler.Listener {
 
     private DictionaryMain main;
     private JTextField textField;
 
     private DefaultComboBoxModel<String> model;
 
-    public WordSearchField(DictionaryMain main) {
+    private final SuggestionScheduler scheduler;
+
+    public WordSearchField(DictionaryMain main, BackgroundTasks tasks) {
 
         this.setModel(model = new DefaultComboBoxModel<>());
         this.main = main;
+        this.scheduler = new SuggestionScheduler(150, word -> {
+            Set<String> matches = new LinkedHashSet<>();
+            matches.add(word);
+            matches.addAll(main.getMatchList(word));
+            return matches;
+        }, this, tasks);
 
         setEditable(true);
         setEditor(new MetalComboBoxEditor() {
@@ -63,38 +70,35 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
     public void showSuggestions() {
         final String typed = textField.getText();
         model.removeAllElements();
-        if (typed.isEmpty())
+        if (typed.isEmpty()) {
+            scheduler.cancel();
             return;
+        }
+        scheduler.schedule(typed);
+    }
 
-        new SwingWorker<Set<String>, String>() {
-            String word = typed;
+    /**
+     * Returns the scheduler used for suggestion lookups, e.g., to change its delay or read its counters.
+     */
+    public SuggestionScheduler getSuggestionScheduler() {
+        return scheduler;
+    }
 
-            @Override
-            protected Set<String> doInBackground() throws Exception {
-                Set<String> matches = new LinkedHashSet<>();
-                matches.add(word);
-                matches.addAll(main.getMatchList(word));
-                return matches;
-            }
+    @Override
+    public void suggestionsReady(String word, Set<String> suggestions) {
+        // If user typed another character since this lookup started, stop
+        if (!textField.getText().equals(word)) return;
+        for (String match : suggestions) {
+            model.addElement(match);
+        }
+        if (model.getSize() > 1)
+            showPopup();
+        else
+            hidePopup();
+    }
 
-            @Override
-            protected void done() {
-                // If user typed another character since this worker started, stop
-                if (!textField.getText().equals(word)) return;
-                try {
-                    for (String match : this.get()) {
-                        model.addElement(match);
-                    }
-                    if (model.getSize() > 1)
-                        showPopup();
-                    else
-                        hidePopup();
-                } catch (ExecutionException e) {
-                    main.handleException(e.getCause());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }.execute();
+    @Override
+    public void lookupFailed(Throwable cause) {
+        main.handleException(cause);
     }
 }
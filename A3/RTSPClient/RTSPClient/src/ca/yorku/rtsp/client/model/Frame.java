@@ -7,10 +7,22 @@
 
 package ca.yorku.rtsp.client.model;
 
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
 import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents an individual frame in a video stream.
+ * <p>
+ * Frames received from the network share the buffer the packet was received in (see FrameBuffer), instead of a copy of
+ * their payload. Such a frame is owned by whoever it was handed to, who must call release when done with it; a frame
+ * passed to SessionListener.frameReceived is only valid during that call, unless the listener calls retain. For frames
+ * created from byte arrays, retain and release do nothing.
  */
 public class Frame {
 
@@ -18,7 +30,8 @@ public class Frame {
     private boolean marker;
     private short sequenceNumber;
     private int timestamp;
-    private byte[] payload;
+    private ByteBuffer payload; // exactly the contents, from position 0 to its limit
+    private FrameBuffer buffer;
 
     /**
      * Creates a new frame.
@@ -42,8 +55,37 @@ public class Frame {
         this.sequenceNumber = sequenceNumber;
         this.timestamp = timestamp;
 
-        this.payload = new byte[length];
-        System.arraycopy(payload, offset, this.payload, 0, length);
+        byte[] copy = new byte[length];
+        System.arraycopy(payload, offset, copy, 0, length);
+        this.payload = ByteBuffer.wrap(copy);
+    }
+
+    /**
+     * Creates a new frame whose payload is part of a pooled buffer, without copying it. The frame takes over one
+     * reference to the buffer, which is released when the frame is.
+     *
+     * @param payloadType    The numeric type of payload found in the frame. The most common type is 26 (JPEG).
+     * @param marker         An indication if the frame is an important frame when compared to other frames in the
+     *                       stream.
+     * @param sequenceNumber A sequential number corresponding to the ordering of the frame.
+     * @param timestamp      The number of milliseconds after the logical start of the stream when this frame is
+     *                       expected to be played.
+     * @param buffer         The buffer containing the payload (contents) of the frame.
+     * @param offset         The position in <tt>buffer</tt> where the contents start.
+     * @param length         The number of bytes to be considered as contents in <tt>buffer</tt>.
+     */
+    public Frame(byte payloadType, boolean marker, short sequenceNumber, int timestamp, FrameBuffer buffer, int offset,
+                 int length) {
+
+        this.payloadType = payloadType;
+        this.marker = marker;
+        this.sequenceNumber = sequenceNumber;
+        this.timestamp = timestamp;
+
+        ByteBuffer data = buffer.getBuffer().duplicate();
+        data.limit(offset + length).position(offset);
+        this.payload = data.slice();
+        this.buffer = buffer;
     }
 
     /**
@@ -107,7 +149,41 @@ public class Frame {
      * @return A byte array corresponding to the raw data of the frame.
      */
     public byte[] getPayload() {
-        return payload.clone();
+        byte[] copy = new byte[payload.limit()];
+        payload.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Returns the raw data included in the frame without copying it. The buffer is read-only, and positioned at the
+     * start of the payload.
+     *
+     * @return A read-only buffer corresponding to the raw data of the frame.
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return payload.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a stream that reads the raw data included in the frame, without copying it first.
+     *
+     * @return An input stream over the raw data of the frame.
+     */
+    public InputStream getPayloadStream() {
+        if (payload.hasArray())
+            return new ByteArrayInputStream(payload.array(), payload.arrayOffset(), payload.limit());
+        return new ByteBufferInputStream(payload.duplicate());
+    }
+
+    /**
+     * Returns an ImageIO stream that reads the raw data included in the frame, without copying it. Unlike the streams
+     * ImageIO creates for an InputStream, it is not backed by a cache file (or a cache in memory), since the whole
+     * payload is already in memory and can be read in any order.
+     *
+     * @return An image input stream over the raw data of the frame.
+     */
+    public ImageInputStream getPayloadImageStream() {
+        return new ByteBufferImageInputStream(payload.duplicate());
     }
 
     /**
@@ -117,15 +193,110 @@ public class Frame {
      * @return The length of the payload.
      */
     public int getPayloadLength() {
-        return payload.length;
+        return payload.limit();
     }
 
     /**
-     * Creates an Image based on the payload of the frame.
+     * Creates an Image based on the payload of the frame. The image is decoded immediately, so it doesn't depend on the
+     * frame's buffer afterwards.
      *
      * @return An <code>Image</code> object corresponding to the frame contents.
      */
     public Image getImage() {
+        try {
+            Image image = ImageIO.read(getPayloadImageStream());
+            if (image != null) return image;
+        } catch (IOException e) {
+            // not a format ImageIO can read, try the toolkit
+        }
         return Toolkit.getDefaultToolkit().createImage(getPayload());
     }
+
+    /**
+     * Adds a reference to the buffer of this frame, so that it remains valid until a matching call to release.
+     *
+     * @return This frame.
+     */
+    public Frame retain() {
+        if (buffer != null) buffer.retain();
+        return this;
+    }
+
+    /**
+     * Releases a reference to the buffer of this frame. The frame must not be used after its last reference is
+     * released.
+     */
+    public void release() {
+        if (buffer != null) buffer.release();
+    }
+
+    /**
+     * Reads a direct buffer, which has no array to wrap in a ByteArrayInputStream.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Reads a buffer, array-backed or direct, as an ImageIO stream. Seeking just moves the read position.
+     */
+    private static class ByteBufferImageInputStream extends ImageInputStreamImpl {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferImageInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= buffer.limit()) return -1;
+            return buffer.get((int) streamPos++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            if (off < 0 || len < 0 || off + len > b.length || off + len < 0)
+                throw new IndexOutOfBoundsException();
+            bitOffset = 0;
+            if (len == 0) return 0;
+            if (streamPos >= buffer.limit()) return -1;
+            len = (int) Math.min(len, buffer.limit() - streamPos);
+            buffer.get((int) streamPos, b, off, len);
+            streamPos += len;
+            return len;
+        }
+
+        @Override
+        public long length() {
+            return buffer.limit();
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package ca.yorku.rtsp.client.model;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted buffer from a FrameBufferPool, holding the data of one received packet. The buffer is returned to
+ * its pool when the last reference is released, so every holder must call release exactly once for each reference it
+ * owns: the one it got from FrameBufferPool.acquire, plus one for each call to retain.
+ */
+public final class FrameBuffer {
+
+    private final FrameBufferPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger references = new AtomicInteger();
+
+    FrameBuffer(FrameBufferPool pool, int size, boolean direct) {
+        this.pool = pool;
+        this.buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    /**
+     * Returns the underlying buffer. Its contents may only be changed by the holder of the first reference, before the
+     * buffer is shared.
+     *
+     * @return The buffer, which is backed by an array unless the pool allocates direct buffers.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Adds a reference to this buffer.
+     *
+     * @return This buffer.
+     * @throws IllegalStateException If the buffer was already returned to its pool.
+     */
+    public FrameBuffer retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.getAndDecrement();
+            throw new IllegalStateException("Buffer already released");
+        }
+        return this;
+    }
+
+    /**
+     * Releases a reference to this buffer, returning it to its pool if it was the last one.
+     *
+     * @throws IllegalStateException If the buffer was already returned to its pool.
+     */
+    public void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            pool.recycle(this);
+        } else if (remaining < 0) {
+            references.getAndIncrement();
+            throw new IllegalStateException("Buffer already released");
+        }
+    }
+
+    /**
+     * Returns the number of references currently held.
+     */
+    public int getReferenceCount() {
+        return references.get();
+    }
+
+    void acquired() {
+        buffer.clear();
+        references.set(1);
+    }
+}
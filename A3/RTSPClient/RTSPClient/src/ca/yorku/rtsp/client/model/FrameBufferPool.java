@@ -0,0 +1,89 @@
+package ca.yorku.rtsp.client.model;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of equally sized FrameBuffers, so that packets can be received and passed on as frames without allocating or
+ * copying their data. Buffers are allocated when the pool is empty, and up to a maximum number of released buffers is
+ * kept for reuse.
+ * <p>
+ * A pool of direct buffers, preallocated when the pool is created, works as the receive ring of a DatagramChannel: the
+ * channel receives into a direct buffer without an intermediate copy, and the buffer comes back to the pool once the
+ * frame in it is released. Released buffers are reused most recently released first, which keeps the working set small.
+ */
+public class FrameBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final ArrayDeque<FrameBuffer> free = new ArrayDeque<FrameBuffer>();
+    private long allocated;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param bufferSize The size of each buffer, in bytes.
+     * @param maxPooled  The maximum number of released buffers kept for reuse.
+     */
+    public FrameBufferPool(int bufferSize, int maxPooled) {
+        this(bufferSize, maxPooled, false, 0);
+    }
+
+    /**
+     * Creates a pool, possibly of direct buffers, with some buffers allocated up front.
+     *
+     * @param bufferSize  The size of each buffer, in bytes.
+     * @param maxPooled   The maximum number of released buffers kept for reuse.
+     * @param direct      Whether buffers are allocated outside the heap (see ByteBuffer.allocateDirect).
+     * @param preallocate The number of buffers allocated immediately (at most maxPooled).
+     */
+    public FrameBufferPool(int bufferSize, int maxPooled, boolean direct, int preallocate) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+        for (int i = 0; i < Math.min(preallocate, maxPooled); i++)
+            free.addLast(new FrameBuffer(this, bufferSize, direct));
+        allocated = free.size();
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one if none is available. The buffer is cleared and holds a
+     * single reference, owned by the caller.
+     *
+     * @return A buffer of getBufferSize() bytes.
+     */
+    public FrameBuffer acquire() {
+        FrameBuffer buffer;
+        synchronized (this) {
+            buffer = free.pollFirst();
+            if (buffer == null) allocated++;
+        }
+        if (buffer == null)
+            buffer = new FrameBuffer(this, bufferSize, direct);
+        buffer.acquired();
+        return buffer;
+    }
+
+    synchronized void recycle(FrameBuffer buffer) {
+        if (free.size() < maxPooled)
+            free.addFirst(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers allocated since the pool was created.
+     */
+    public synchronized long getAllocatedCount() {
+        return allocated;
+    }
+
+    /**
+     * Returns the number of released buffers currently available for reuse.
+     */
+    public synchronized int getPooledCount() {
+        return free.size();
+    }
+}
@@ -0,0 +1,291 @@
+package ca.yorku.rtsp.client.model;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+
+/**
+ * This class decodes frames into images on a small pool of threads, so that decoding neither blocks the thread that
+ * presents frames nor the user interface. Frames are decoded in parallel, but their images are handed to the output in
+ * the order the frames were submitted.
+ * <p>
+ * JPEG frames (payload type 26) are decoded with an ImageIO reader kept by each thread, straight from the frame's
+ * buffer (see Frame.getPayloadImageStream), into BufferedImages taken from a pool: once the output is done with an
+ * image, it should give it back with recycle, and the next frame of the same size is decoded into it instead of a new
+ * image. Frames of other types are decoded with Frame.getImage.
+ * <p>
+ * At most a fixed number of frames wait for or go through decoding. When a frame is submitted and the decoder is full,
+ * the oldest frame not being decoded yet that doesn't have its marker on is dropped; a frame with its marker on is only
+ * dropped if no other frame can be.
+ * <p>
+ * The decoder owns the frames submitted: each frame is released after the output returns, or when it is dropped.
+ */
+public class FrameDecoder {
+
+    private static final byte JPEG_PAYLOAD_TYPE = 26;
+
+    private static final int MAX_POOLED_IMAGES = 8;
+
+    private static class Task {
+        private final Frame frame;
+        private boolean started;
+        private boolean done;
+        private boolean discarded;
+        private Image image;
+
+        private Task(Frame frame) {
+            this.frame = frame;
+        }
+    }
+
+    private final BiConsumer<Frame, Image> output;
+    private final int capacity;
+    private final ArrayDeque<Task> tasks = new ArrayDeque<Task>(); // in submission order, until handed to the output
+    private final ArrayDeque<BufferedImage> images = new ArrayDeque<BufferedImage>();
+    private boolean emitting;
+    private boolean closed;
+
+    private long decoded;
+    private long dropped;
+    private long failed;
+    private long imagesCreated;
+
+    /**
+     * Creates a decoder and starts its threads.
+     *
+     * @param threads  The number of frames decoded in parallel.
+     * @param capacity The maximum number of frames waiting for or going through decoding (at least threads + 1).
+     * @param output   Called with each frame and its image (null if it could not be decoded), in submission order. It
+     *                 is called on one of the decoding threads, never on two at the same time.
+     */
+    public FrameDecoder(int threads, int capacity, BiConsumer<Frame, Image> output) {
+        this.output = output;
+        this.capacity = Math.max(capacity, threads + 1);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::run, "frame-decoder-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Adds a frame to be decoded, dropping an older frame if the decoder is full (or this frame, if every frame held
+     * has its marker on or is already being decoded).
+     */
+    public synchronized void submit(Frame frame) {
+        if (closed) {
+            frame.release();
+            return;
+        }
+        if (tasks.size() >= capacity && !dropWaiting(false) && !dropWaiting(true)) {
+            frame.release();
+            dropped++;
+            return;
+        }
+        tasks.addLast(new Task(frame));
+        notifyAll();
+    }
+
+    /**
+     * Gives back an image handed to the output, to be reused for a later frame. The image must not be used afterwards.
+     * Images that are not BufferedImages are ignored.
+     */
+    public synchronized void recycle(Image image) {
+        if (image instanceof BufferedImage && images.size() < MAX_POOLED_IMAGES)
+            images.addFirst((BufferedImage) image);
+    }
+
+    /**
+     * Discards the frames not handed to the output yet, e.g., when the video is closed. Frames being decoded are
+     * released, without being handed to the output, once their decoding ends.
+     */
+    public synchronized void clear() {
+        Iterator<Task> iterator = tasks.iterator();
+        while (iterator.hasNext()) {
+            Task task = iterator.next();
+            if (!task.started) {
+                task.frame.release();
+                iterator.remove();
+            } else {
+                task.discarded = true;
+            }
+        }
+    }
+
+    /**
+     * Discards the frames not decoded yet and stops the decoding threads.
+     */
+    public synchronized void close() {
+        closed = true;
+        clear();
+        images.clear();
+        notifyAll();
+    }
+
+    public synchronized long getDecodedCount() {
+        return decoded;
+    }
+
+    /**
+     * Returns the number of frames dropped because the decoder was full.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Returns the number of frames whose payload could not be decoded.
+     */
+    public synchronized long getFailedCount() {
+        return failed;
+    }
+
+    /**
+     * Returns the number of images allocated for JPEG frames, as opposed to reused from the pool.
+     */
+    public synchronized long getImagesCreatedCount() {
+        return imagesCreated;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("queued=%d decoded=%d dropped=%d failed=%d imagesCreated=%d",
+                tasks.size(), decoded, dropped, failed, imagesCreated);
+    }
+
+    // Drops the oldest frame not being decoded yet, with or without its marker on
+    private boolean dropWaiting(boolean marker) {
+        Iterator<Task> iterator = tasks.iterator();
+        while (iterator.hasNext()) {
+            Task task = iterator.next();
+            if (!task.started && task.frame.isMarkerOn() == marker) {
+                task.frame.release();
+                iterator.remove();
+                dropped++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void run() {
+        ImageReader reader = null;
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+            if (readers.hasNext()) reader = readers.next();
+            while (true) {
+                Task task = next();
+                if (task == null) return;
+                Image image = decode(reader, task.frame);
+                finish(task, image);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } finally {
+            if (reader != null) reader.dispose();
+        }
+    }
+
+    /**
+     * Waits for a frame that is not being decoded yet, and marks it as started. Returns null when the decoder is closed.
+     */
+    private synchronized Task next() throws InterruptedException {
+        while (!closed) {
+            for (Task task : tasks) {
+                if (!task.started) {
+                    task.started = true;
+                    return task;
+                }
+            }
+            wait();
+        }
+        return null;
+    }
+
+    private Image decode(ImageReader reader, Frame frame) {
+        if (frame.getPayloadType() != JPEG_PAYLOAD_TYPE || reader == null)
+            return frame.getImage();
+        BufferedImage destination = null;
+        // Read straight from the frame's buffer; ImageIO's own streams would copy each payload to a cache file
+        try (ImageInputStream input = frame.getPayloadImageStream()) {
+            reader.setInput(input, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            destination = destination(reader);
+            param.setDestination(destination);
+            return reader.read(0, param);
+        } catch (IOException | RuntimeException e) {
+            if (destination != null) recycle(destination);
+            return null;
+        } finally {
+            reader.setInput(null);
+        }
+    }
+
+    // Takes a pooled image of the size and type of the frame being read, or creates one
+    private BufferedImage destination(ImageReader reader) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        ImageTypeSpecifier type = reader.getImageTypes(0).next();
+        synchronized (this) {
+            Iterator<BufferedImage> iterator = images.iterator();
+            while (iterator.hasNext()) {
+                BufferedImage image = iterator.next();
+                if (image.getWidth() == width && image.getHeight() == height &&
+                        image.getType() == type.getBufferedImageType()) {
+                    iterator.remove();
+                    return image;
+                }
+            }
+            imagesCreated++;
+        }
+        return type.createBufferedImage(width, height);
+    }
+
+    /**
+     * Records the image of a frame, and hands every decoded frame at the head of the queue to the output. Only one
+     * thread does so at a time, which keeps the images in order.
+     */
+    private void finish(Task task, Image image) {
+        synchronized (this) {
+            task.done = true;
+            task.image = image;
+            if (image == null) failed++;
+            else decoded++;
+            if (emitting) return;
+            emitting = true;
+        }
+        while (true) {
+            Task head;
+            boolean discarded;
+            synchronized (this) {
+                head = tasks.peekFirst();
+                if (head == null || !head.done) {
+                    emitting = false;
+                    return;
+                }
+                tasks.pollFirst();
+                discarded = head.discarded;
+            }
+            if (discarded) {
+                recycle(head.image);
+                head.frame.release();
+                continue;
+            }
+            try {
+                output.accept(head.frame, head.image);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                head.frame.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package ca.yorku.rtsp.client.model;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * This class presents frames at the pace given by their timestamps instead of the pace at which they arrive. The
+ * first frame after a (re)start anchors a playout clock: a frame with timestamp <i>t</i> is presented at the arrival
+ * time of the anchor frame, plus <i>t</i> minus the anchor's timestamp, plus the latency target. The latency target is
+ * the time frames spend waiting here to absorb variations in network delay; bursts of frames are smoothed out as long
+ * as they arrive within that time.
+ * <p>
+ * The clocks of the server and the client never run at exactly the same rate, so the scheduler tracks how early frames
+ * arrive (an exponential average of the time between arrival and presentation) and slowly moves the clock, by at most
+ * a millisecond per frame, to keep that average at the latency target. When presentation falls behind (a slow decoder
+ * or a burst of late frames), frames that are already overdue are dropped in favour of the latest overdue one.
+ * <p>
+ * Frames are presented on a dedicated thread, which calls the consumer given to the constructor. The scheduler owns the
+ * frames scheduled: each frame is released after the consumer returns, or when it is dropped.
+ */
+public class PlayoutScheduler {
+
+    private static final int MAX_QUEUED_FRAMES = 256;
+
+    // Weight of each new sample in the average slack, and how far from the target the average may drift before the
+    // clock is corrected
+    private static final double SLACK_GAIN = 1.0 / 32;
+    private static final long SLACK_TOLERANCE_MILLIS = 5;
+
+    private static class Entry {
+        private final Frame frame;
+        private final long presentAtNanos;
+
+        private Entry(Frame frame, long presentAtNanos) {
+            this.frame = frame;
+            this.presentAtNanos = presentAtNanos;
+        }
+    }
+
+    private final Consumer<Frame> output;
+    private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+    private final Thread thread;
+    private long latencyTargetMillis = 100;
+
+    private boolean anchored;
+    private long anchorNanos;       // wall clock time corresponding to the anchor timestamp, without the latency target
+    private int anchorTimestamp;
+    private double averageSlackMillis;
+    private boolean paused;
+    private boolean closed;
+
+    private long presented;
+    private long dropped;
+    private long correctionMillis;
+
+    /**
+     * Creates a scheduler and starts its presentation thread.
+     *
+     * @param output Called with each frame when it is due, on the presentation thread.
+     */
+    public PlayoutScheduler(Consumer<Frame> output) {
+        this.output = output;
+        this.thread = new Thread(this::run, "playout");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Sets how long frames are delayed after their arrival, in milliseconds. Larger values absorb more network jitter,
+     * at the cost of a longer delay before playback starts. A change is applied gradually by the clock correction.
+     */
+    public synchronized void setLatencyTargetMillis(long latencyTargetMillis) {
+        this.latencyTargetMillis = latencyTargetMillis;
+    }
+
+    public synchronized long getLatencyTargetMillis() {
+        return latencyTargetMillis;
+    }
+
+    /**
+     * Adds a frame, to be presented when its timestamp is due. Frames must be added in sequence order.
+     */
+    public synchronized void schedule(Frame frame) {
+        if (closed) {
+            frame.release();
+            return;
+        }
+        long now = System.nanoTime();
+        int timestamp = frame.getTimestamp();
+        if (!anchored) {
+            anchored = true;
+            anchorNanos = now;
+            anchorTimestamp = timestamp;
+            averageSlackMillis = latencyTargetMillis;
+        }
+        long presentAt = dueTime(timestamp);
+
+        // Drift correction: move the clock by at most 1ms per frame towards the latency target
+        double slack = (presentAt - now) / 1e6;
+        averageSlackMillis += (slack - averageSlackMillis) * SLACK_GAIN;
+        if (averageSlackMillis > latencyTargetMillis + SLACK_TOLERANCE_MILLIS) {
+            anchorNanos -= 1000000;
+            correctionMillis--;
+        } else if (averageSlackMillis < latencyTargetMillis - SLACK_TOLERANCE_MILLIS) {
+            anchorNanos += 1000000;
+            correctionMillis++;
+        }
+
+        if (queue.size() >= MAX_QUEUED_FRAMES) {
+            queue.pollFirst().frame.release();
+            dropped++;
+        }
+        queue.addLast(new Entry(frame, presentAt));
+        notifyAll();
+    }
+
+    /**
+     * Stops presenting frames. Frames still queued are presented after resume, relative to a new clock.
+     */
+    public synchronized void pause() {
+        paused = true;
+        anchored = false;
+        notifyAll();
+    }
+
+    /**
+     * Resumes presentation after pause. The next frame scheduled anchors a new clock; frames queued during the pause
+     * are re-timed relative to the first of them.
+     */
+    public synchronized void resume() {
+        if (!paused) return;
+        paused = false;
+        if (!queue.isEmpty()) {
+            ArrayDeque<Entry> queued = new ArrayDeque<Entry>(queue);
+            queue.clear();
+            for (Entry entry : queued)
+                schedule(entry.frame);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Discards queued frames and the clock, e.g., when the video is closed.
+     */
+    public synchronized void clear() {
+        releaseQueued();
+        anchored = false;
+        notifyAll();
+    }
+
+    /**
+     * Discards queued frames and stops the presentation thread.
+     */
+    public synchronized void close() {
+        closed = true;
+        releaseQueued();
+        notifyAll();
+    }
+
+    public synchronized long getPresentedCount() {
+        return presented;
+    }
+
+    /**
+     * Returns the number of frames dropped because they were overdue or the queue was full.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Returns the total clock correction applied so far, in milliseconds (negative if the clock was moved earlier).
+     */
+    public synchronized long getCorrectionMillis() {
+        return correctionMillis;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("queued=%d presented=%d dropped=%d slack=%.1fms correction=%dms",
+                queue.size(), presented, dropped, averageSlackMillis, correctionMillis);
+    }
+
+    private void releaseQueued() {
+        for (Entry entry : queue)
+            entry.frame.release();
+        queue.clear();
+    }
+
+    // Timestamps are in milliseconds and may wrap around, so only their difference is meaningful
+    private long dueTime(int timestamp) {
+        return anchorNanos + ((long) (timestamp - anchorTimestamp) + latencyTargetMillis) * 1000000;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Frame frame = next();
+                if (frame == null) return;
+                try {
+                    output.accept(frame);
+                } finally {
+                    frame.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Waits until the first queued frame is due, and returns it, or the latest of the overdue frames if more than one
+     * is overdue. Returns null when the scheduler is closed.
+     */
+    private synchronized Frame next() throws InterruptedException {
+        while (!closed) {
+            Entry head = queue.peekFirst();
+            if (head == null || paused) {
+                wait();
+                continue;
+            }
+            long now = System.nanoTime();
+            long waitNanos = head.presentAtNanos - now;
+            if (waitNanos > 0) {
+                wait(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                continue;
+            }
+            queue.pollFirst();
+            while (!queue.isEmpty() && queue.peekFirst().presentAtNanos <= now) {
+                head.frame.release();
+                head = queue.pollFirst();
+                dropped++;
+            }
+            presented++;
+            return head.frame;
+        }
+        return null;
+    }
+}
@@ -22,10 +22,12 @@ public class Session {
     private Set<SessionListener> sessionListeners = new HashSet<SessionListener>();
     private RTSPConnection rtspConnection;
     private String videoName = null;
+    private final PlayoutScheduler playoutScheduler;
 
     /**
      * Creates a new RTSP session. This constructor will also create a new network connection with the server. No stream
-     * setup is established at this point.
+     * setup is established at this point. The latency target of the playout scheduler can be set with the
+     * <tt>rtsp.latency</tt> system property, in milliseconds.
      *
      * @param server The IP address or host name of the RTSP server.
      * @param port   The port where the RTSP server is listening to.
@@ -34,6 +36,8 @@ public class Session {
     public Session(String server, int port) throws RTSPException {
 
         rtspConnection = new RTSPConnection(this, server, port);
+        playoutScheduler = new PlayoutScheduler(this::presentFrame);
+        playoutScheduler.setLatencyTargetMillis(Long.getLong("rtsp.latency", 100));
     }
 
     /**
@@ -82,6 +86,7 @@ public class Session {
     public void play() {
         try {
             rtspConnection.play();
+            playoutScheduler.resume();
         } catch (RTSPException e) {
             listenerException(e);
         }
@@ -95,6 +100,7 @@ public class Session {
     public void pause() {
         try {
             rtspConnection.pause();
+            playoutScheduler.pause();
         } catch (RTSPException e) {
             listenerException(e);
         }
@@ -125,20 +131,46 @@ public class Session {
      */
     public void closeConnection() {
         rtspConnection.closeConnection();
+        playoutScheduler.close();
     }
 
     /**
      * Processes a frame received from the RTSP server. This method will direct the frame to the user interface to be
-     * processed and presented to the user.
+     * processed and presented to the user, once it is due according to its timestamp (see PlayoutScheduler). A null
+     * frame clears the picture immediately, discarding frames not presented yet. The session takes ownership of the
+     * frame (see Frame.release).
      *
      * @param frame The recently received frame.
      */
     public synchronized void processReceivedFrame(Frame frame) {
-        if (videoName == null) return;
+        if (videoName == null) {
+            if (frame != null) frame.release();
+            return;
+        }
+        if (frame == null) {
+            playoutScheduler.clear();
+            presentFrame(null);
+        } else {
+            playoutScheduler.schedule(frame);
+        }
+    }
+
+    private synchronized void presentFrame(Frame frame) {
+        if (videoName == null && frame != null) return;
         for (SessionListener listener : sessionListeners)
             listener.frameReceived(frame);
     }
 
+    /**
+     * Returns the scheduler that paces the presentation of frames, e.g., to change its latency target or show its
+     * statistics.
+     *
+     * @return The playout scheduler of this session.
+     */
+    public PlayoutScheduler getPlayoutScheduler() {
+        return playoutScheduler;
+    }
+
     /**
      * Returns the name of the currently opened video.
      *
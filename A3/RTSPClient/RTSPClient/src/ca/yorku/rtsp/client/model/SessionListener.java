@@ -13,6 +13,10 @@ public interface SessionListener {
 
     public void exceptionThrown(RTSPException exception);
 
+    /**
+     * Called when a frame is due to be presented, or with null when the picture should be cleared. The frame is only
+     * valid during this call; a listener that keeps it must call Frame.retain, and release it later.
+     */
     public void frameReceived(Frame frame);
 
     public void videoNameChanged(String videoName);
@@ -0,0 +1,250 @@
+package ca.yorku.rtsp.client.net;
+
+import ca.yorku.rtsp.client.model.Frame;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class reorders the frames received from the network before they are handed to the session. Frames are added in
+ * arrival order by the receiving thread and taken in sequence number order by the delivery thread. Sequence numbers
+ * are 16-bit and wrap around, so they are extended to 64 bits relative to the highest number seen so far.
+ * <p>
+ * A frame that is the next in sequence is released immediately. When there is a gap, the frames after it are held
+ * until the missing frame arrives or the oldest held frame has waited for the target delay, at which point the missing
+ * frames are counted as lost. Duplicates, and frames arriving after a later frame was released, are dropped.
+ * <p>
+ * The target delay adapts to the network: it is a multiple of the interarrival jitter, estimated as in RFC 3550
+ * (section 6.4.1) from the arrival times and RTP timestamps of the frames, bounded by a minimum and a maximum delay.
+ * <p>
+ * The buffer owns the frames added to it: frames it drops are released, and frames taken are owned by the caller.
+ */
+public class JitterBuffer {
+
+    // A jump of more than this many sequence numbers forward, or this many backwards, is not considered reordering
+    private static final int MAX_DROPOUT = 3000;
+    private static final int MAX_MISORDER = 100;
+
+    // Number of jitter estimates the target delay is set to
+    private static final double JITTER_MULTIPLIER = 4;
+
+    private static class Entry {
+        private final Frame frame;
+        private final long arrivalNanos;
+
+        private Entry(Frame frame, long arrivalNanos) {
+            this.frame = frame;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+
+    private final TreeMap<Long, Entry> frames = new TreeMap<Long, Entry>();
+    private final int capacity;
+    private long minDelayMillis = 10;
+    private long maxDelayMillis = 500;
+
+    private long highest = -1;      // highest extended sequence number seen, -1 before the first frame
+    private long nextExpected = -1; // extended sequence number of the next frame to release, -1 before the first one
+    private int badSequence = -1;   // a sequence number that would confirm a jump in the sequence, -1 if none
+    private boolean closed;
+
+    private double jitter;          // in milliseconds (the unit of frame timestamps)
+    private double lastTransit;
+    private boolean hasTransit;
+
+    private long received;
+    private long released;
+    private long lost;
+    private long late;
+    private long duplicates;
+
+    /**
+     * Creates a new jitter buffer.
+     *
+     * @param capacity The maximum number of frames held. When the buffer is full, the oldest frame is released even if
+     *                 frames before it are missing.
+     */
+    public JitterBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the bounds of the target delay, i.e., how long frames after a gap may be held waiting for the missing
+     * frames.
+     */
+    public synchronized void setDelayBounds(long minDelayMillis, long maxDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        notifyAll();
+    }
+
+    /**
+     * Adds a frame received from the network.
+     *
+     * @param frame The frame received.
+     * @return <tt>true</tt> if the frame was accepted, <tt>false</tt> if it was dropped as a duplicate or as late.
+     */
+    public synchronized boolean add(Frame frame) {
+        long now = System.nanoTime();
+        received++;
+        int sequence = frame.getSequenceNumber() & 0xFFFF;
+        long extended;
+        if (highest < 0) {
+            extended = sequence;
+        } else {
+            int delta = (short) (sequence - (int) (highest & 0xFFFF));
+            extended = highest + delta;
+            if (delta > MAX_DROPOUT || delta < -MAX_DROPOUT || nextExpected >= 0 && extended < nextExpected - MAX_MISORDER) {
+                // A large jump: the source probably restarted. Accept it if the following frame confirms it.
+                if (sequence != badSequence) {
+                    badSequence = (sequence + 1) & 0xFFFF;
+                    late++;
+                    frame.release();
+                    return false;
+                }
+                restart();
+                extended = sequence;
+            }
+        }
+        badSequence = -1;
+
+        if (nextExpected >= 0 && extended < nextExpected) {
+            late++;
+            frame.release();
+            return false;
+        }
+        if (frames.containsKey(extended)) {
+            duplicates++;
+            frame.release();
+            return false;
+        }
+        frames.put(extended, new Entry(frame, now));
+        if (extended > highest) highest = extended;
+        updateJitter(frame, now);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Waits for the next frame to be released, in sequence number order.
+     *
+     * @return The next frame, or null if the buffer was closed.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public synchronized Frame take() throws InterruptedException {
+        while (!closed) {
+            Map.Entry<Long, Entry> head = frames.firstEntry();
+            if (head == null) {
+                wait();
+                continue;
+            }
+            long sequence = head.getKey();
+            long waitNanos = 0;
+            if (sequence != nextExpected && frames.size() < capacity)
+                waitNanos = head.getValue().arrivalNanos + getTargetDelayMillis() * 1000000 - System.nanoTime();
+            if (waitNanos > 0) {
+                wait(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                continue;
+            }
+            frames.pollFirstEntry();
+            if (nextExpected >= 0) lost += sequence - nextExpected;
+            nextExpected = sequence + 1;
+            released++;
+            return head.getValue().frame;
+        }
+        return null;
+    }
+
+    /**
+     * Wakes up any thread waiting in take, which then returns null. Frames added afterwards are kept until reopen.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Allows frames to be taken again after close, keeping the frames held and the sequence state (e.g., when a paused
+     * stream is resumed).
+     */
+    public synchronized void reopen() {
+        closed = false;
+    }
+
+    /**
+     * Discards all held frames and the sequence and jitter state, for a new stream. Counters are kept.
+     */
+    public synchronized void restart() {
+        for (Entry entry : frames.values())
+            entry.frame.release();
+        frames.clear();
+        highest = nextExpected = -1;
+        badSequence = -1;
+        jitter = 0;
+        hasTransit = false;
+        notifyAll();
+    }
+
+    /**
+     * Returns the current interarrival jitter estimate, in milliseconds.
+     */
+    public synchronized double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Returns how long frames after a gap are currently held, in milliseconds.
+     */
+    public synchronized long getTargetDelayMillis() {
+        long delay = Math.round(JITTER_MULTIPLIER * jitter);
+        return Math.max(minDelayMillis, Math.min(maxDelayMillis, delay));
+    }
+
+    /**
+     * Returns the number of frames currently held in the buffer.
+     */
+    public synchronized int getOccupancy() {
+        return frames.size();
+    }
+
+    public synchronized long getReceivedCount() {
+        return received;
+    }
+
+    public synchronized long getReleasedCount() {
+        return released;
+    }
+
+    /**
+     * Returns the number of frames that never arrived (or arrived too late to be released in order).
+     */
+    public synchronized long getLostCount() {
+        return lost;
+    }
+
+    /**
+     * Returns the number of frames dropped because they arrived after a later frame had been released.
+     */
+    public synchronized long getLateCount() {
+        return late;
+    }
+
+    public synchronized long getDuplicateCount() {
+        return duplicates;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("occupancy=%d received=%d released=%d lost=%d late=%d duplicates=%d jitter=%.1fms delay=%dms",
+                frames.size(), received, released, lost, late, duplicates, jitter, getTargetDelayMillis());
+    }
+
+    // RFC 3550: J(i) = J(i-1) + (|D(i-1,i)| - J(i-1)) / 16, where D is the difference in relative transit times
+    private void updateJitter(Frame frame, long arrivalNanos) {
+        double transit = arrivalNanos / 1e6 - frame.getTimestamp();
+        if (hasTransit)
+            jitter += (Math.abs(transit - lastTransit) - jitter) / 16;
+        lastTransit = transit;
+        hasTransit = true;
+    }
+}
@@ -9,13 +9,20 @@ package ca.yorku.rtsp.client.net;
 
 import ca.yorku.rtsp.client.exception.RTSPException;
 import ca.yorku.rtsp.client.model.Frame;
+import ca.yorku.rtsp.client.model.FrameBuffer;
+import ca.yorku.rtsp.client.model.FrameBufferPool;
 import ca.yorku.rtsp.client.model.Session;
 
 import java.io.*;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket; // added for RTP connection
 import java.net.Socket;
+import java.net.StandardSocketOptions;
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.sql.Connection;
 
 
@@ -26,6 +33,16 @@ public class RTSPConnection {
 
     private static final int BUFFER_LENGTH = 0x10000;
 
+    private static final int JITTER_BUFFER_CAPACITY = 64;
+
+    private static final int RTP_HEADER_LENGTH = 12;
+
+    private static final int RECEIVE_RING_SIZE = 384;
+
+    // Requested size of the kernel receive buffer of the RTP socket, which can be set with the rtsp.rcvbuf system
+    // property. The kernel may grant less (e.g., net.core.rmem_max on Linux).
+    private static final int RECEIVE_BUFFER_SIZE = Integer.getInteger("rtsp.rcvbuf", 4 << 20);
+
     private Session session;
 
     public Socket socket;
@@ -46,7 +63,17 @@ public class RTSPConnection {
 
     public int DGsocketPort;
 
-    // TODO Add additional fields, if necessary
+    private final JitterBuffer jitterBuffer = new JitterBuffer(JITTER_BUFFER_CAPACITY);
+
+    // Direct buffers are expensive to allocate, so enough are kept to cover the frames held downstream (the jitter
+    // buffer and the playout queue) instead of reallocating them after every burst
+    private final FrameBufferPool bufferPool = new FrameBufferPool(BUFFER_LENGTH, RECEIVE_RING_SIZE, true, 16);
+
+    private DatagramChannel DGchannel;
+
+    private RTPReceivingThread receivingThread;
+
+    private RTPDeliveryThread deliveryThread;
 
     /**
      * Establishes a new connection with an RTSP server. No message is sent at this point, and no stream is set up.
@@ -81,8 +108,11 @@ public class RTSPConnection {
      */
     public synchronized void setup(String videoName) throws RTSPException {
         try {
-            DGsocket = new DatagramSocket();
-            DGsocket.setSoTimeout(1000);
+            DGchannel = DatagramChannel.open();
+            DGchannel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+            DGchannel.bind(null);
+            DGchannel.configureBlocking(false);
+            DGsocket = DGchannel.socket();
         } catch (Exception e) {
             throw new RTSPException("TIME OUT ERROR!!");
         }
@@ -127,7 +157,7 @@ public class RTSPConnection {
             RTSPResponse serverResponse = readRTSPResponse();
             if (serverResponse.getResponseCode() != 200) throw new RTSPException("Response code invalid");
 
-            new RTPReceivingThread().start();   // "start()" a method from Thread class. Refer to JavaDocs.
+            startRTPThreads();
         } catch (RTSPException e) {
             throw new RTSPException("Error!");
         } catch (Exception e) {
@@ -136,29 +166,124 @@ public class RTSPConnection {
 
     }
 
+    /**
+     * Starts the threads that receive RTP packets and deliver their frames to the session, stopping any previous ones.
+     */
+    private void startRTPThreads() throws IOException {
+        stopRTPThreads();
+        jitterBuffer.reopen();
+        receivingThread = new RTPReceivingThread();
+        deliveryThread = new RTPDeliveryThread();
+        receivingThread.start();   // "start()" a method from Thread class. Refer to JavaDocs.
+        deliveryThread.start();
+    }
+
+    /**
+     * Stops the RTP threads, if running. Frames already in the jitter buffer are kept.
+     */
+    private void stopRTPThreads() {
+        if (receivingThread != null) {
+            receivingThread.cancel();
+            receivingThread = null;
+        }
+        if (deliveryThread != null) {
+            jitterBuffer.close();
+            deliveryThread.interrupt();
+            deliveryThread = null;
+        }
+    }
+
+    /**
+     * Returns the jitter buffer between the network and the session, e.g., to show its statistics.
+     *
+     * @return The jitter buffer used by this connection.
+     */
+    public JitterBuffer getJitterBuffer() {
+        return jitterBuffer;
+    }
+
     private class RTPReceivingThread extends Thread {
+
+        private volatile boolean cancelled;
+
+        private final Selector selector;
+
+        private RTPReceivingThread() throws IOException {
+            super("rtp-receiver");
+            setDaemon(true);
+            selector = Selector.open();
+            DGchannel.register(selector, SelectionKey.OP_READ);
+        }
+
         /**
          * Continuously receives RTP packets until the thread is cancelled. Each packet received from the datagram
-         * socket is assumed to be no larger than BUFFER_LENGTH bytes. This data is then parsed into a Frame object
-         * (using the parseRTPPacket method) and the method session.processReceivedFrame is called with the resulting
-         * packet. The receiving process should be configured to timeout if no RTP packet is received after two seconds.
+         * channel is assumed to be no larger than BUFFER_LENGTH bytes, and is received directly into a pooled direct
+         * buffer. This data is then parsed into a Frame object sharing that buffer (using the parseRTPPacket method)
+         * and added to the jitter buffer, from where the delivery thread passes it on to session.processReceivedFrame
+         * in sequence order.
+         * <p>
+         * Every time the channel becomes readable, all the datagrams queued in the socket buffer are received before
+         * waiting again, so that a burst costs one wakeup instead of one per packet. The thread wakes up at least every
+         * two seconds if no RTP packet is received, and immediately when cancelled.
          */
         @Override
         public void run() {
-            byte[] buff = new byte[BUFFER_LENGTH];
-            DGpacket = new DatagramPacket(buff,buff.length);
-            try{
-                while (true) {
-                    DGsocket.receive(DGpacket);
-                    DGsocket.setSoTimeout(2000);    // if 2 seconds pass and it doesn't receive anything, drop packet.
-                    session.processReceivedFrame(parseRTPPacket(DGpacket));
+            FrameBuffer buffer = bufferPool.acquire();
+            try {
+                while (!cancelled) {
+                    if (selector.select(2000) == 0) continue;
+                    selector.selectedKeys().clear();
+                    while (!cancelled) {
+                        ByteBuffer data = buffer.getBuffer();
+                        data.clear();
+                        if (DGchannel.receive(data) == null) break;
+                        int length = data.position();
+                        if (length < RTP_HEADER_LENGTH) continue;
+                        // Frames received after PAUSE are kept, to be delivered in order when playback resumes
+                        jitterBuffer.add(parseRTPPacket(buffer, length));
+                        buffer = bufferPool.acquire();
+                    }
+                }
+            } catch (IOException e) {
+                if (!cancelled && DGchannel.isOpen())
+                    System.out.println("RUN ERROR!");
+            } finally {
+                buffer.release();
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // nothing
                 }
-            }
-            catch(Exception e){
-                System.out.println("RUN ERROR!");
             }
         }
 
+        private void cancel() {
+            cancelled = true;
+            selector.wakeup();
+        }
+    }
+
+    private class RTPDeliveryThread extends Thread {
+
+        private RTPDeliveryThread() {
+            super("rtp-delivery");
+            setDaemon(true);
+        }
+
+        /**
+         * Passes the frames released by the jitter buffer to the session, until the buffer is closed or the thread is
+         * interrupted.
+         */
+        @Override
+        public void run() {
+            try {
+                Frame frame;
+                while (!isInterrupted() && (frame = jitterBuffer.take()) != null)
+                    session.processReceivedFrame(frame);
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
     }
 
     /**
@@ -178,7 +303,7 @@ public class RTSPConnection {
             output.flush();
             RTSPResponse serverResponse = readRTSPResponse();
             if (serverResponse.getResponseCode() != 200) throw new RTSPException("Response code invalid");
-            new RTPReceivingThread().interrupt();
+            stopRTPThreads();
         } catch (RTSPException e) {
             throw new RTSPException("Error!");
         } catch (Exception e) {
@@ -206,8 +331,9 @@ public class RTSPConnection {
             output.flush();
             RTSPResponse serverResponse = readRTSPResponse();
             if (serverResponse.getResponseCode() != 200) throw new RTSPException("Response code invalid");
-            new RTPReceivingThread().interrupt(); // stops thread
+            stopRTPThreads(); // stops threads
             DGsocket.close();   // closes socket after receiving string request, and checking response code
+            jitterBuffer.restart();
         } catch (RTSPException e) {
             throw new RTSPException("Error!");
         } catch (Exception e) {
@@ -220,6 +346,9 @@ public class RTSPConnection {
      * connection, such as the RTP connection, if it is still open.
      */
     public synchronized void closeConnection() {
+        stopRTPThreads();
+        if (DGsocket != null)
+            DGsocket.close();
         try {
             socket.close();
         } catch (Exception e) {
@@ -246,6 +375,24 @@ public class RTSPConnection {
         return frame;
     }
 
+    /**
+     * Parses an RTP packet received into a pooled buffer into a Frame object, without copying its payload. The frame
+     * takes over the caller's reference to the buffer.
+     *
+     * @param buffer The buffer containing the RTP packet, starting at position 0.
+     * @param length The length of the RTP packet.
+     * @return A Frame object whose payload is part of the buffer.
+     */
+    public static Frame parseRTPPacket(FrameBuffer buffer, int length) {
+        ByteBuffer data = buffer.getBuffer();
+        byte payloadType = (byte) (data.get(1) & 0x7F);
+        boolean marker = (data.get(1) & 0x80) == 0x80;
+        short frameSeqNum = data.getShort(2);
+        int timestamp = data.getInt(4);     // RTP headers are big endian, the default byte order of ByteBuffer
+        return new Frame(payloadType, marker, frameSeqNum, timestamp, buffer, RTP_HEADER_LENGTH,
+                length - RTP_HEADER_LENGTH);
+    }
+
     /**
      * Reads and parses an RTSP response from the socket's input.
      *
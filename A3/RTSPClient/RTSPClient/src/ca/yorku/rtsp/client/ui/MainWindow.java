@@ -9,6 +9,7 @@ package ca.yorku.rtsp.client.ui;
 
 import ca.yorku.rtsp.client.exception.RTSPException;
 import ca.yorku.rtsp.client.model.Frame;
+import ca.yorku.rtsp.client.model.FrameDecoder;
 import ca.yorku.rtsp.client.model.Session;
 import ca.yorku.rtsp.client.model.SessionListener;
 
@@ -19,10 +20,15 @@ import java.awt.event.WindowEvent;
 
 public class MainWindow extends JFrame implements SessionListener {
 
+    // Frames are decoded on a few threads besides the ones receiving and presenting them, and the event dispatch thread
+    private static final int DECODER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 2));
+    private static final int DECODER_CAPACITY = 2 * DECODER_THREADS + 2;
+
     private Session session;
 
     private VideoControlToolbar videoControlToolbar;
-    private JLabel imagePanel;
+    private VideoPanel imagePanel;
+    private FrameDecoder frameDecoder;
     private JLabel videoNamePanel;
     private SelectServerDialog selectServerDialog;
 
@@ -31,9 +37,9 @@ public class MainWindow extends JFrame implements SessionListener {
         super("Video Client");
 
         videoControlToolbar = new VideoControlToolbar(this);
-        imagePanel = new JLabel();
-        imagePanel.setHorizontalAlignment(SwingConstants.CENTER);
-        imagePanel.setVerticalAlignment(SwingConstants.CENTER);
+        frameDecoder = new FrameDecoder(DECODER_THREADS, DECODER_CAPACITY,
+                (frame, image) -> imagePanel.showImage(image));
+        imagePanel = new VideoPanel(frameDecoder::recycle);
         videoNamePanel = new JLabel();
         videoNamePanel.setHorizontalAlignment(SwingConstants.CENTER);
 
@@ -97,12 +103,17 @@ public class MainWindow extends JFrame implements SessionListener {
         JOptionPane.showMessageDialog(this, exception.getMessage());
     }
 
+    /**
+     * Hands the frame to the decoder, which shows its image once decoded, so that neither the presentation of the
+     * following frames nor the event dispatch thread wait for the decoding.
+     */
     @Override
     public void frameReceived(Frame frame) {
-        if (frame == null) imagePanel.setIcon(null);
-        else {
-            Image scaledImage = frame.getImage().getScaledInstance(-imagePanel.getWidth(), imagePanel.getHeight(), Image.SCALE_FAST);
-            imagePanel.setIcon(new ImageIcon(scaledImage));
+        if (frame == null) {
+            frameDecoder.clear();
+            imagePanel.showImage(null);
+        } else {
+            frameDecoder.submit(frame.retain());
         }
     }
 
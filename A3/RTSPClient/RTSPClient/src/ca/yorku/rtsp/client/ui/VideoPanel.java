@@ -0,0 +1,68 @@
+package ca.yorku.rtsp.client.ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.function.Consumer;
+
+/**
+ * Shows the current video image, scaled to fit the panel and keeping its proportions. Images are scaled as they are
+ * painted, instead of creating a scaled copy of every frame.
+ * <p>
+ * Images may be shown from any thread. If images are shown faster than the event dispatch thread can paint them, only
+ * the latest one is painted; every image that is replaced, painted or not, is handed to the recycler given to the
+ * constructor, so it can be reused.
+ */
+public class VideoPanel extends JComponent {
+
+    private final Consumer<Image> recycler;
+    private Image image;        // accessed only on the event dispatch thread
+    private Image pending;
+    private boolean posted;
+
+    public VideoPanel(Consumer<Image> recycler) {
+        this.recycler = recycler;
+        setOpaque(false);
+    }
+
+    /**
+     * Replaces the image shown, or clears the panel if image is null.
+     */
+    public void showImage(Image image) {
+        Image replaced;
+        synchronized (this) {
+            replaced = pending;
+            pending = image;
+            if (!posted) {
+                posted = true;
+                SwingUtilities.invokeLater(this::update);
+            }
+        }
+        if (replaced != null) recycler.accept(replaced);
+    }
+
+    private void update() {
+        Image next;
+        synchronized (this) {
+            next = pending;
+            pending = null;
+            posted = false;
+        }
+        Image replaced = image;
+        image = next;
+        repaint();
+        if (replaced != null && replaced != next) recycler.accept(replaced);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (image == null) return;
+        int imageWidth = image.getWidth(this);
+        int imageHeight = image.getHeight(this);
+        if (imageWidth <= 0 || imageHeight <= 0) return;
+        double scale = Math.min((double) getWidth() / imageWidth, (double) getHeight() / imageHeight);
+        int width = (int) (imageWidth * scale);
+        int height = (int) (imageHeight * scale);
+        g.drawImage(image, (getWidth() - width) / 2, (getHeight() - height) / 2, width, height, this);
+    }
+}